@@ -0,0 +1,498 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints, in the style of Roaring bitmaps.
+ * The ints are split by their high 16 bits into containers of at most
+ * 65536 values, kept sorted by key. A container holding up to ARRAY_MAX
+ * values is a sorted array of their low 16 bits, a fuller one is a bitmap
+ * of 1024 longs, so a container never takes more than 8 KB and a sparse
+ * one takes 2 bytes per value.
+ * encoding: count | per container: key (short) | type (byte) | values,
+ * where an array is its length and the values, a bitmap its 1024 longs,
+ * and runs the number of runs and (start, length - 1) per run. Runs are
+ * only an encoding, written when they are the smallest, which is the
+ * case for the long stretches of consecutive values in commit numbers.
+ *
+ * @author winter
+ */
+class Bitmap {
+    /** the most values a container keeps as an array */
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private static final byte ARRAY = 0;
+    private static final byte BITS = 1;
+    private static final byte RUNS = 2;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new Container());
+        }
+        containers[i].add((char) value);
+    }
+
+    boolean contains(int value) {
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /**
+     * add every value of OTHER to this bitmap
+     */
+    void or(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || i < size && keys[i] < other.keys[j]) {
+                result.append(keys[i], containers[i].copy());
+                i += 1;
+            } else if (i == size || other.keys[j] < keys[i]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j += 1;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i += 1;
+                j += 1;
+            }
+        }
+        keys = result.keys;
+        containers = result.containers;
+        size = result.size;
+    }
+
+    /**
+     * the values in both this bitmap and OTHER
+     */
+    Bitmap and(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i += 1;
+            } else if (other.keys[j] < keys[i]) {
+                j += 1;
+            } else {
+                Container c = containers[i].and(other.containers[j]);
+                if (c.cardinality > 0) {
+                    result.append(keys[i], c);
+                }
+                i += 1;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * the values in this bitmap but not in OTHER
+     */
+    Bitmap andNot(Bitmap other) {
+        Bitmap result = new Bitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j += 1;
+            }
+            Container c = j < other.size && other.keys[j] == keys[i]
+                    ? containers[i].andNot(other.containers[j]) : containers[i].copy();
+            if (c.cardinality > 0) {
+                result.append(keys[i], c);
+            }
+        }
+        return result;
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    /**
+     * call ACTION with every value, in increasing order
+     */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * the values in increasing order
+     */
+    int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] n = new int[1];
+        forEach(value -> values[n[0]++] = value);
+        return values;
+    }
+
+    byte[] encode() {
+        int length = 4;
+        byte[] types = new byte[size];
+        for (int i = 0; i < size; i++) {
+            types[i] = containers[i].encoding();
+            length += 3 + containers[i].encodedSize(types[i]);
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putChar(keys[i]);
+            out.put(types[i]);
+            containers[i].encode(types[i], out);
+        }
+        return out.array();
+    }
+
+    /**
+     * the bitmap encoded at the position of IN, which is moved past it
+     */
+    static Bitmap decode(ByteBuffer in) {
+        Bitmap bitmap = new Bitmap();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            char key = in.getChar();
+            bitmap.append(key, Container.decode(in.get(), in));
+        }
+        return bitmap;
+    }
+
+    /**
+     * the index of the container with KEY, or -(insertion point) - 1
+     */
+    private int find(char key) {
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int i, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size += 1;
+    }
+
+    private void append(char key, Container container) {
+        insert(size, key, container);
+    }
+
+    /**
+     * The values of one key: sorted low 16 bits in VALUES while there are
+     * at most ARRAY_MAX of them, bits in WORDS afterwards.
+     */
+    private static final class Container {
+        private char[] values = new char[4];
+        private long[] words;
+        private int cardinality;
+
+        void add(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) == 0) {
+                    words[value >>> 6] |= bit;
+                    cardinality += 1;
+                }
+                return;
+            }
+            int i = cardinality > 0 && values[cardinality - 1] < value
+                    ? -cardinality - 1 : Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toWords();
+                add(value);
+                return;
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality += 1;
+        }
+
+        boolean contains(char value) {
+            if (words != null) {
+                return (words[value >>> 6] & (1L << value)) != 0;
+            }
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        Container or(Container other) {
+            if (words == null && other.words == null
+                    && cardinality + other.cardinality <= ARRAY_MAX) {
+                Container result = new Container();
+                result.values = new char[Math.max(4, cardinality + other.cardinality)];
+                int i = 0;
+                int j = 0;
+                while (i < cardinality || j < other.cardinality) {
+                    char value;
+                    if (j == other.cardinality
+                            || i < cardinality && values[i] <= other.values[j]) {
+                        value = values[i];
+                        if (j < other.cardinality && other.values[j] == value) {
+                            j += 1;
+                        }
+                        i += 1;
+                    } else {
+                        value = other.values[j];
+                        j += 1;
+                    }
+                    result.values[result.cardinality++] = value;
+                }
+                return result;
+            }
+            long[] a = bits();
+            long[] b = other.bits();
+            long[] result = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) {
+                result[i] = a[i] | b[i];
+            }
+            return fromWords(result);
+        }
+
+        Container and(Container other) {
+            if (words == null || other.words == null) {
+                Container small = words == null ? this : other;
+                Container large = small == this ? other : this;
+                Container result = new Container();
+                result.values = new char[Math.max(4, small.cardinality)];
+                for (int i = 0; i < small.cardinality; i++) {
+                    if (large.contains(small.values[i])) {
+                        result.values[result.cardinality++] = small.values[i];
+                    }
+                }
+                return result;
+            }
+            long[] result = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) {
+                result[i] = words[i] & other.words[i];
+            }
+            return fromWords(result);
+        }
+
+        Container andNot(Container other) {
+            if (words == null) {
+                Container result = new Container();
+                result.values = new char[Math.max(4, cardinality)];
+                for (int i = 0; i < cardinality; i++) {
+                    if (!other.contains(values[i])) {
+                        result.values[result.cardinality++] = values[i];
+                    }
+                }
+                return result;
+            }
+            long[] b = other.bits();
+            long[] result = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) {
+                result[i] = words[i] & ~b[i];
+            }
+            return fromWords(result);
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.cardinality = cardinality;
+            copy.values = words == null ? Arrays.copyOf(values, Math.max(4, cardinality)) : null;
+            copy.words = words == null ? null : words.clone();
+            return copy;
+        }
+
+        void forEach(int high, IntConsumer action) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    action.accept(high | values[i]);
+                }
+                return;
+            }
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(high | i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * the smallest of the three encodings of this container
+         */
+        byte encoding() {
+            int runs = runs();
+            byte type = cardinality <= ARRAY_MAX ? ARRAY : BITS;
+            return 2 + 4 * runs < encodedSize(type) ? RUNS : type;
+        }
+
+        int encodedSize(byte type) {
+            switch (type) {
+                case ARRAY:
+                    return 2 + 2 * cardinality;
+                case BITS:
+                    return 8 * WORDS;
+                default:
+                    return 2 + 4 * runs();
+            }
+        }
+
+        void encode(byte type, ByteBuffer out) {
+            switch (type) {
+                case ARRAY:
+                    out.putChar((char) (cardinality - 1));
+                    for (char value : arrayValues()) {
+                        out.putChar(value);
+                    }
+                    break;
+                case BITS:
+                    for (long word : bits()) {
+                        out.putLong(word);
+                    }
+                    break;
+                default:
+                    out.putChar((char) (runs() - 1));
+                    int[] start = {-1};
+                    int[] last = {-2};
+                    forEach(0, value -> {
+                        if (value != last[0] + 1) {
+                            if (start[0] >= 0) {
+                                out.putChar((char) start[0]).putChar((char) (last[0] - start[0]));
+                            }
+                            start[0] = value;
+                        }
+                        last[0] = value;
+                    });
+                    out.putChar((char) start[0]).putChar((char) (last[0] - start[0]));
+            }
+        }
+
+        static Container decode(byte type, ByteBuffer in) {
+            Container container = new Container();
+            switch (type) {
+                case ARRAY:
+                    int count = in.getChar() + 1;
+                    container.values = new char[count];
+                    for (int i = 0; i < count; i++) {
+                        container.values[i] = in.getChar();
+                    }
+                    container.cardinality = count;
+                    return container;
+                case BITS:
+                    long[] words = new long[WORDS];
+                    for (int i = 0; i < WORDS; i++) {
+                        words[i] = in.getLong();
+                    }
+                    return fromWords(words);
+                case RUNS:
+                    int runs = in.getChar() + 1;
+                    long[] bits = new long[WORDS];
+                    for (int i = 0; i < runs; i++) {
+                        int start = in.getChar();
+                        int end = start + in.getChar() + 1;
+                        //the words from the one holding START to the one holding END - 1
+                        int first = start >>> 6;
+                        int last = (end - 1) >>> 6;
+                        for (int w = first; w <= last; w++) {
+                            long mask = -1L;
+                            if (w == first) {
+                                mask &= -1L << start;
+                            }
+                            if (w == last) {
+                                mask &= -1L >>> (64 - end);
+                            }
+                            bits[w] |= mask;
+                        }
+                    }
+                    return fromWords(bits);
+                default:
+                    throw new IllegalArgumentException("unknown bitmap container " + type);
+            }
+        }
+
+        /**
+         * the number of runs of consecutive values
+         */
+        private int runs() {
+            int[] runs = new int[1];
+            int[] last = {-2};
+            forEach(0, value -> {
+                if (value != last[0] + 1) {
+                    runs[0] += 1;
+                }
+                last[0] = value;
+            });
+            return runs[0];
+        }
+
+        /**
+         * the values as a sorted array of exactly CARDINALITY values
+         */
+        private char[] arrayValues() {
+            if (words == null) {
+                return Arrays.copyOf(values, cardinality);
+            }
+            char[] array = new char[cardinality];
+            int[] n = new int[1];
+            forEach(0, value -> array[n[0]++] = (char) value);
+            return array;
+        }
+
+        /**
+         * the bits of this container, converting an array to words for the operation
+         */
+        private long[] bits() {
+            if (words != null) {
+                return words;
+            }
+            long[] bits = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            return bits;
+        }
+
+        private void toWords() {
+            words = bits();
+            values = null;
+        }
+
+        /**
+         * a container with the bits WORDS, stored as an array if it is sparse enough
+         */
+        private static Container fromWords(long[] words) {
+            Container container = new Container();
+            for (long word : words) {
+                container.cardinality += Long.bitCount(word);
+            }
+            container.words = words;
+            container.values = null;
+            if (container.cardinality <= ARRAY_MAX) {
+                container.values = container.arrayValues();
+                container.words = null;
+            }
+            return container;
+        }
+    }
+}
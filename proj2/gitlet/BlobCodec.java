@@ -0,0 +1,203 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The codecs a blob can be stored with.
+ * A stored blob starts with a header: "GLB" | codec id | raw length (8 bytes),
+ * followed by the content encoded with that codec. Blobs written before
+ * codecs existed have no header and are read back as they are.
+ * A header with codec id Manifest.CODEC_ID starts a manifest of chunks
+ * instead, which ObjectStore reads before it gets here.
+ *
+ * @author winter
+ */
+abstract class BlobCodec {
+    static final int HEADER_SIZE = 12;
+
+    /** blobs smaller than this are not worth compressing */
+    static final int MIN_COMPRESS_SIZE = 512;
+    /** blobs at least this large use the fast codec instead of deflate */
+    static final long FAST_CODEC_SIZE = 4 << 20;
+    /** a sample that deflates to more than this fraction is incompressible */
+    static final double MAX_RATIO = 0.9;
+
+    static final BlobCodec NONE = new BlobCodec((byte) 0, "none") {
+        @Override
+        OutputStream encoder(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decoder(InputStream in) {
+            return in;
+        }
+    };
+
+    static final BlobCodec DEFLATE = new BlobCodec((byte) 1, "deflate") {
+        @Override
+        OutputStream encoder(OutputStream out) {
+            return new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION),
+                    Utils.BUFFER_SIZE);
+        }
+
+        @Override
+        InputStream decoder(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    };
+
+    static final BlobCodec LZ = new LzCodec();
+
+    private static final BlobCodec[] CODECS = {NONE, DEFLATE, LZ};
+
+    private final byte id;
+    private final String name;
+
+    BlobCodec(byte id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    byte id() {
+        return id;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * wrap OUT so that everything written to it is encoded with this codec
+     */
+    abstract OutputStream encoder(OutputStream out);
+
+    /**
+     * wrap IN so that reading from it decodes content encoded with this codec
+     */
+    abstract InputStream decoder(InputStream in);
+
+    static BlobCodec byId(byte id) {
+        for (BlobCodec codec : CODECS) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("unknown blob codec " + id);
+    }
+
+    /**
+     * choose the codec for a blob of SIZE bytes whose first LENGTH bytes are SAMPLE
+     */
+    static BlobCodec choose(long size, byte[] sample, int length) {
+        if (size < MIN_COMPRESS_SIZE) {
+            return NONE;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(sample, 0, length);
+        deflater.finish();
+        byte[] out = new byte[length + 64];
+        int compressed = 0;
+        while (!deflater.finished() && compressed < out.length) {
+            compressed += deflater.deflate(out, compressed, out.length - compressed);
+        }
+        deflater.end();
+        if (compressed > length * MAX_RATIO) {
+            return NONE;
+        }
+        return size >= FAST_CODEC_SIZE ? LZ : DEFLATE;
+    }
+
+    /**
+     * write the blob header for a blob of SIZE raw bytes encoded with CODEC
+     */
+    static void writeHeader(OutputStream out, BlobCodec codec, long size) throws IOException {
+        out.write(header(codec, size));
+    }
+
+    static byte[] header(BlobCodec codec, long size) {
+        return header(codec.id, size);
+    }
+
+    /**
+     * the blob header for a blob of SIZE raw bytes stored with the codec id CODECID
+     */
+    static byte[] header(byte codecId, long size) {
+        byte[] header = new byte[HEADER_SIZE];
+        header[0] = 'G';
+        header[1] = 'L';
+        header[2] = 'B';
+        header[3] = codecId;
+        for (int i = 0; i < 8; i++) {
+            header[4 + i] = (byte) (size >>> (56 - 8 * i));
+        }
+        return header;
+    }
+
+    /**
+     * check if STORED starts with a blob header
+     */
+    static boolean hasHeader(byte[] stored) {
+        return stored.length >= HEADER_SIZE
+                && stored[0] == 'G' && stored[1] == 'L' && stored[2] == 'B';
+    }
+
+    /**
+     * encode the raw blob CONTENT with the codec chosen for it
+     */
+    static byte[] encode(byte[] content) {
+        BlobCodec codec = choose(content.length, content,
+                Math.min(content.length, Utils.BUFFER_SIZE));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            writeHeader(bytes, codec, content.length);
+            OutputStream out = codec.encoder(bytes);
+            out.write(content);
+            out.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * decode the stored blob STORED back to its raw content
+     */
+    static byte[] decode(byte[] stored) {
+        if (!hasHeader(stored)) {
+            return stored;
+        }
+        BlobCodec codec = byId(stored[3]);
+        long size = 0;
+        for (int i = 0; i < 8; i++) {
+            size = (size << 8) | (stored[4 + i] & 0xff);
+        }
+        if (codec == NONE) {
+            byte[] content = new byte[(int) size];
+            System.arraycopy(stored, HEADER_SIZE, content, 0, content.length);
+            return content;
+        }
+        try (InputStream in = codec.decoder(new ByteArrayInputStream(
+                stored, HEADER_SIZE, stored.length - HEADER_SIZE))) {
+            byte[] content = new byte[(int) size];
+            int n = 0;
+            while (n < content.length) {
+                int read = in.read(content, n, content.length - n);
+                if (read < 0) {
+                    throw new IOException("truncated blob");
+                }
+                n += read;
+            }
+            return content;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures the wall-clock time of switching between two branches that
+ * differ in a small fraction of their files, with one checkout thread and
+ * with the default number. Gitlet runs as a separate process for every
+ * command, so the times include JVM startup.
+ * usage: java gitlet.CheckoutBenchmark [files] [percent changed] [rounds]
+ *
+ * @author winter
+ */
+public class CheckoutBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        double percent = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        File dir = Files.createTempDirectory("gitlet-checkout").toFile();
+        try {
+            for (int i = 0; i < files; i++) {
+                write(new File(dir, "f" + i + ".txt"), "file " + i + "\n");
+            }
+            run(dir, 1, "init");
+            run(dir, 0, "add", ".");
+            run(dir, 1, "commit", "base");
+            run(dir, 1, "branch", "other");
+            int step = Math.max(1, (int) Math.round(100 / percent));
+            List<String> changed = new ArrayList<>();
+            changed.add("add");
+            for (int i = 0; i < files; i += step) {
+                write(new File(dir, "f" + i + ".txt"), "changed " + i + "\n");
+                changed.add("f" + i + ".txt");
+            }
+            run(dir, 0, changed.toArray(new String[0]));
+            run(dir, 1, "commit", "change " + (changed.size() - 1) + " files");
+
+            System.out.printf("%d files, %d changed between the branches%n",
+                    files, changed.size() - 1);
+            System.out.printf("%-8s %14s%n", "threads", "checkout ms");
+            for (int threads : new int[]{1, Repository.CHECKOUT_THREADS}) {
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < rounds; r++) {
+                    best = Math.min(best, run(dir, threads, "checkout", "other"));
+                    best = Math.min(best, run(dir, threads, "checkout", "master"));
+                }
+                System.out.printf("%-8d %14d%n", threads, best);
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * run gitlet with ARGS in DIR, with THREADS checkout threads (0 for the
+     * default), and return the wall-clock time in milliseconds
+     */
+    private static long run(File dir, int threads, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        if (threads > 0) {
+            command.add("-Dgitlet.checkout.threads=" + threads);
+        }
+        command.add("gitlet.Main");
+        command.addAll(List.of(args));
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(dir)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("gitlet " + String.join(" ", args) + " failed");
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
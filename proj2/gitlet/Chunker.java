@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.util.Random;
+
+/**
+ * Content-defined chunking of large blobs (FastCDC).
+ * A rolling Gear hash runs over the bytes, fp = (fp << 1) + GEAR[byte],
+ * so its top bits depend on the last 64 bytes only, and a chunk ends where
+ * the top bits of fp are all zero. An edit therefore only moves the
+ * boundaries next to it: the chunks before and after it are cut at the
+ * same bytes as before, and are shared with the old version.
+ * Chunks are at least MIN_SIZE and at most MAX_SIZE bytes. Up to
+ * AVERAGE_SIZE bytes a boundary needs two more zero bits than after it,
+ * which keeps most chunks close to AVERAGE_SIZE.
+ *
+ * @author winter
+ */
+class Chunker {
+    static final int MIN_SIZE = 16 << 10;
+    static final int AVERAGE_SIZE = 64 << 10;
+    static final int MAX_SIZE = 256 << 10;
+
+    /** the zero bits a boundary needs before and after AVERAGE_SIZE, log2(AVERAGE_SIZE) +/- 2 */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+    private static final long MASK_LARGE = -1L << (64 - 14);
+
+    /**
+     * A random value per byte. boundaries depend on it, so it must never
+     * change: the seed and java.util.Random are fixed.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x676974_6c6574L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * the length of the chunk starting at FROM in DATA, whose bytes up to
+     * TO are known. TO - FROM must be at least MAX_SIZE unless the data ends at TO
+     */
+    static int cut(byte[] data, int from, int to) {
+        int length = Math.min(to - from, MAX_SIZE);
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int average = Math.min(AVERAGE_SIZE, length);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < average; i++) {
+            fp = (fp << 1) + GEAR[data[from + i] & 0xff];
+            if ((fp & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            fp = (fp << 1) + GEAR[data[from + i] & 0xff];
+            if ((fp & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+}
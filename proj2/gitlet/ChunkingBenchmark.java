@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures content-defined chunking: the throughput of Chunker, and how
+ * many bytes a series of edited versions of a data set takes when every
+ * distinct chunk is stored once, compared to chunks of a fixed size.
+ * Each version edits the one before it: bytes overwritten in place, then
+ * bytes inserted, then bytes deleted, then data appended.
+ * usage: java gitlet.ChunkingBenchmark [megabytes per data set]
+ *
+ * @author winter
+ */
+public class ChunkingBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int EDITS = 16;
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int size = megabytes << 20;
+        Random random = new Random(22);
+        System.out.printf("%-8s %12s %12s%n", "data", "cut MB/s", "+sha1 MB/s");
+        byte[] model = randomBytes(size, random);
+        byte[] records = records(size, random);
+        throughput("random", model);
+        throughput("records", records);
+        System.out.printf("%n%-8s %-8s %8s %10s %12s %12s %8s%n", "data", "chunker",
+                "chunks", "avg bytes", "total", "stored", "dedup");
+        dedup("random", versions(model, random));
+        dedup("records", versions(records, random));
+    }
+
+    private static void throughput(String name, byte[] data) {
+        long cutNanos = Long.MAX_VALUE;
+        long hashNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            chunks(data, false);
+            cutNanos = Math.min(cutNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            chunks(data, true);
+            hashNanos = Math.min(hashNanos, System.nanoTime() - start);
+        }
+        System.out.printf("%-8s %12.1f %12.1f%n", name,
+                megabytesPerSecond(data.length, cutNanos), megabytesPerSecond(data.length, hashNanos));
+    }
+
+    private static void dedup(String name, List<byte[]> versions) {
+        for (boolean contentDefined : new boolean[]{true, false}) {
+            Set<String> unique = new HashSet<>();
+            long total = 0;
+            long stored = 0;
+            int count = 0;
+            for (byte[] version : versions) {
+                int start = 0;
+                while (start < version.length) {
+                    int length = contentDefined ? Chunker.cut(version, start, version.length)
+                            : Math.min(Chunker.AVERAGE_SIZE, version.length - start);
+                    if (unique.add(sha1(version, start, length))) {
+                        stored += length;
+                    }
+                    total += length;
+                    count += 1;
+                    start += length;
+                }
+            }
+            System.out.printf("%-8s %-8s %8d %10d %12d %12d %8.2f%n", name,
+                    contentDefined ? "fastcdc" : "fixed", count, total / count, total, stored,
+                    (double) total / stored);
+        }
+    }
+
+    /**
+     * DATA and four more versions, each edited from the one before
+     */
+    private static List<byte[]> versions(byte[] data, Random random) {
+        List<byte[]> versions = new ArrayList<>();
+        versions.add(data);
+        byte[] overwritten = data.clone();
+        for (int i = 0; i < EDITS; i++) {
+            int at = random.nextInt(overwritten.length - 64);
+            for (int j = 0; j < 64; j++) {
+                overwritten[at + j] = (byte) random.nextInt();
+            }
+        }
+        versions.add(overwritten);
+        versions.add(splice(overwritten, random, 100, 0));
+        versions.add(splice(versions.get(2), random, 0, 1000));
+        ByteArrayOutputStream appended = new ByteArrayOutputStream();
+        appended.writeBytes(versions.get(3));
+        appended.writeBytes(randomBytes(1 << 20, random));
+        versions.add(appended.toByteArray());
+        return versions;
+    }
+
+    /**
+     * DATA with INSERTED random bytes inserted and DELETED bytes deleted at EDITS places
+     */
+    private static byte[] splice(byte[] data, Random random, int inserted, int deleted) {
+        int[] places = random.ints(EDITS, 0, data.length - deleted).sorted().toArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + EDITS * inserted);
+        int last = 0;
+        for (int place : places) {
+            if (place < last) {
+                continue;
+            }
+            out.write(data, last, place - last);
+            out.writeBytes(randomBytes(inserted, random));
+            last = place + deleted;
+        }
+        out.write(data, last, data.length - last);
+        return out.toByteArray();
+    }
+
+    private static int chunks(byte[] data, boolean hash) {
+        int count = 0;
+        int start = 0;
+        while (start < data.length) {
+            int length = Chunker.cut(data, start, data.length);
+            if (hash) {
+                sha1(data, start, length);
+            }
+            start += length;
+            count += 1;
+        }
+        return count;
+    }
+
+    private static String sha1(byte[] data, int from, int length) {
+        MessageDigest md = Utils.newSha1();
+        md.update(data, from, length);
+        return Utils.toHex(md.digest(), 0);
+    }
+
+    /** incompressible bytes, like a model or a compressed archive */
+    private static byte[] randomBytes(int size, Random random) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    /** lines of comma-separated records, like a data set */
+    private static byte[] records(int size, Random random) {
+        StringBuilder text = new StringBuilder(size + 128);
+        while (text.length() < size) {
+            text.append(random.nextInt(1000000)).append(',')
+                    .append(random.nextDouble()).append(',')
+                    .append(random.nextBoolean() ? "train" : "test").append('\n');
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+}
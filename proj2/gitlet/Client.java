@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A thin client of gitlet serve, used like gitlet.Main.
+ * It sends the arguments to the daemon of the repository in the current
+ * directory and prints what the command prints, exiting with its exit code.
+ * Without a running daemon it runs the command itself.
+ * usage: java gitlet.Client [--stats] [--profile[=json]] command [operands]
+ *
+ * @author winter
+ */
+public class Client {
+    public static void main(String[] args) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(Daemon.SOCKET.toPath()));
+        } catch (IOException excp) {
+            channel.close();
+            Main.main(args);
+            return;
+        }
+        int code;
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                int kind = in.readByte();
+                if (kind == Daemon.EXIT) {
+                    code = in.readInt();
+                    break;
+                }
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                PrintStream stream = kind == Daemon.STDOUT ? System.out : System.err;
+                stream.write(bytes, 0, bytes.length);
+            }
+        }
+        System.out.flush();
+        System.err.flush();
+        System.exit(code);
+    }
+}
@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Compares the blob codecs: bytes on disk and read/write throughput.
+ * usage: java gitlet.CodecBenchmark [megabytes per data set]
+ *
+ * @author winter
+ */
+public class CodecBenchmark {
+    private static final BlobCodec[] CODECS = {BlobCodec.NONE, BlobCodec.DEFLATE, BlobCodec.LZ};
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int size = megabytes << 20;
+        Random random = new Random(61);
+        System.out.printf("%-8s %-8s %12s %8s %12s %12s%n",
+                "data", "codec", "stored", "ratio", "write MB/s", "read MB/s");
+        report("text", text(size, random));
+        report("records", records(size, random));
+        report("random", randomBytes(size, random));
+    }
+
+    private static void report(String name, byte[] data) throws IOException {
+        for (BlobCodec codec : CODECS) {
+            byte[] stored = encode(codec, data);
+            long writeNanos = Long.MAX_VALUE;
+            long readNanos = Long.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                encode(codec, data);
+                writeNanos = Math.min(writeNanos, System.nanoTime() - start);
+                start = System.nanoTime();
+                decode(codec, stored, data.length);
+                readNanos = Math.min(readNanos, System.nanoTime() - start);
+            }
+            System.out.printf("%-8s %-8s %12d %8.3f %12.1f %12.1f%n", name, codec.name(),
+                    stored.length, (double) stored.length / data.length,
+                    throughput(data.length, writeNanos), throughput(data.length, readNanos));
+        }
+        System.out.printf("%-8s %-8s %s%n", name, "chosen", BlobCodec.choose(data.length, data,
+                Math.min(data.length, Utils.BUFFER_SIZE)).name());
+    }
+
+    private static byte[] encode(BlobCodec codec, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+        OutputStream out = codec.encoder(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void decode(BlobCodec codec, byte[] stored, int length) throws IOException {
+        byte[] buffer = new byte[Utils.BUFFER_SIZE];
+        int total = 0;
+        try (InputStream in = codec.decoder(new ByteArrayInputStream(stored))) {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                total += n;
+            }
+        }
+        if (total != length) {
+            throw new IllegalStateException(codec.name() + " lost data");
+        }
+    }
+
+    private static double throughput(int bytes, long nanos) {
+        return bytes / (double) (1 << 20) / (nanos / 1e9);
+    }
+
+    /**
+     * source-like text: lines drawn from a small vocabulary
+     */
+    private static byte[] text(int size, Random random) {
+        String[] words = {"public", "static", "void", "String", "return", "if", "else",
+            "commit", "blob", "branch", "merge", "for", "int", "new", "File", "null"};
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            int indent = random.nextInt(4) * 4;
+            builder.append(" ".repeat(indent));
+            int count = 2 + random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                builder.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            builder.append(random.nextInt(1000)).append(";\n");
+        }
+        return builder.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * fixed-size binary records with slowly changing fields, like a data file
+     */
+    private static byte[] records(int size, Random random) {
+        byte[] data = new byte[size];
+        long id = 0;
+        for (int i = 0; i + 32 <= size; i += 32) {
+            id += 1 + random.nextInt(3);
+            for (int k = 0; k < 8; k++) {
+                data[i + k] = (byte) (id >>> (8 * k));
+            }
+            data[i + 8 + random.nextInt(24)] = (byte) random.nextInt(256);
+        }
+        return data;
+    }
+
+    private static byte[] randomBytes(int size, Random random) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
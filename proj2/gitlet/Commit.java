@@ -5,36 +5,50 @@ import static gitlet.Utils.*;
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
-public class Commit extends FileTracker {
+public class Commit {
 
     private final String message;
     private final String time;
     private final String parent;
     private final String author = "Winter";
+    /**
+     * the sha1Code of the root tree of the tracked files
+     */
+    private String tree;
 
-    Commit(String message, String parent, Map<String, String> trackedFiles) {
-        super(trackedFiles);
-        this.message = message;
-        this.time = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z").format(new Date());
-        this.parent = parent;
-        this.trackedFiles = trackedFiles;
-    }
+    /**
+     * recently read commits, so a command decodes each commit once
+     */
+    private static final LruCache<String, Commit> CACHE =
+            new LruCache<>("commits", 4 << 20, Commit::weight);
 
     Commit(String message) {
-        super();
         this.message = message;
         this.time = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z").format(new Date());
         parent = null;
+        tree = Tree.EMPTY;
     }
 
     Commit(Commit commit, String message) {
-        super(commit.trackedFiles);
         this.message = message;
         this.time = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z").format(new Date());
         this.parent = commit.getSha1();
+        this.tree = commit.tree;
+    }
+
+    /**
+     * a commit read back from the object store
+     */
+    Commit(String message, String time, String parent, String tree) {
+        this.message = message;
+        this.time = time;
+        this.parent = parent;
+        this.tree = tree;
     }
 
     public String getMessage() {
@@ -49,6 +63,26 @@ public class Commit extends FileTracker {
         return this.parent;
     }
 
+    public String getTree() {
+        return this.tree;
+    }
+
+    /**
+     * the files tracked by the commit: file name to the sha1Code of its content.
+     * the map is shared through the tree cache and cannot be modified
+     */
+    public Map<String, String> getTrackedFiles() {
+        return Tree.read(tree);
+    }
+
+    public Set<String> getFileNames() {
+        return new LinkedHashSet<>(getTrackedFiles().keySet());
+    }
+
+    public String getFileContentSha1(String filename) {
+        return getTrackedFiles().getOrDefault(filename, "");
+    }
+
     public String getSha1() {
         return sha1(String.format("Message: %s Time: %s Author: %s\nParentSha1: %s\n",
                 message, time, author, parent));
@@ -58,7 +92,7 @@ public class Commit extends FileTracker {
     public String toString() {
         String info = String.format("Message: %s Time: %s Author: %s\nParentSha1: %s \n"
                 +
-                "TrackedFiles: %s", message, time, author, parent, trackedFiles);
+                "Tree: %s", message, time, author, parent, tree);
         return info;
     }
 
@@ -80,25 +114,25 @@ public class Commit extends FileTracker {
                 &&
                 this.message.equals(other.message)
                 &&
-                this.trackedFiles.equals(other.trackedFiles);
+                this.tree.equals(other.tree);
     }
 
     public void commit() {
-        File commitFile = join(Repository.COMMITS, getSha1());
-        createNewFile(commitFile);
-
         updateTrackFiles();
-        writeObject(commitFile, this);
+        ObjectStore.write(ObjectStore.COMMIT, getSha1(), ObjectCodec.encode(this));
+        CommitIndex.add(getSha1());
+        CommitGraph.add(this);
+        MessageIndex.add(this);
         setupHead();
         setupBranch(curBranch());
         //debugCommit();
     }
 
     public void initCommit() {
-        File commit = join(Repository.COMMITS, getSha1());
-        createNewFile(commit);
-
-        writeObject(commit, this);
+        ObjectStore.write(ObjectStore.COMMIT, getSha1(), ObjectCodec.encode(this));
+        CommitIndex.add(getSha1());
+        CommitGraph.add(this);
+        MessageIndex.rebuild();
         setupHead();
         setupBranch("master");
 
@@ -107,14 +141,13 @@ public class Commit extends FileTracker {
 
 
     private void setupHead() {
-        writeContents(Repository.HEAD, getSha1());
+        Transaction.write(Repository.HEAD, getSha1());
     }
 
     private void setupBranch(String branchName) {
         File branchFile = join(Repository.BRANCH, branchName);
-        createNewFile(branchFile);
-        writeContents(branchFile, getSha1());
-        writeContents(Repository.CURRENT, branchName);
+        Transaction.write(branchFile, getSha1());
+        Transaction.write(Repository.CURRENT, branchName);
     }
 
     public static Commit getCommit(String sha1) {
@@ -122,23 +155,30 @@ public class Commit extends FileTracker {
             return null;
         }
         if (sha1.length() < 40) {
-            List<String> commits = plainFilenamesIn(Repository.COMMITS);
-            for (String commitId : commits) {
-                if (commitId.startsWith(sha1)) {
-                    sha1 = commitId;
-                }
-            }
+            sha1 = CommitIndex.resolve(sha1);
         }
-        File commit = join(Repository.COMMITS, sha1);
-        if (!commit.exists()) {
-            System.out.print("No commit with that id exists.");
-            System.exit(0);
+        Commit cached = sha1 == null ? null : CACHE.get(sha1);
+        if (cached != null) {
+            return cached;
         }
-        return readObject(commit, Commit.class);
+        byte[] commit = sha1 == null ? null : ObjectStore.read(ObjectStore.COMMIT, sha1);
+        if (commit == null) {
+            throw error("No commit with that id exists.");
+        }
+        Commit result = ObjectCodec.decodeCommit(commit);
+        CACHE.put(sha1, result);
+        return result;
+    }
+
+    /**
+     * the approximate size of the commit in memory
+     */
+    private static long weight(Commit commit) {
+        return 160 + 2L * (commit.message.length() + commit.time.length());
     }
 
     public static Commit getCurCommit() {
-        String sha1 = readContentsAsString(Repository.HEAD);
+        String sha1 = Transaction.readString(Repository.HEAD);
         return getCommit(sha1);
     }
 
@@ -146,40 +186,31 @@ public class Commit extends FileTracker {
      * update tracked files according to addition stage
      */
     public void updateTrackFiles() {
-        FileTracker addition = readObject(Repository.ADDITION, FileTracker.class);
-        FileTracker removal = readObject(Repository.REMOVAL, FileTracker.class);
+        FileTracker addition = FileTracker.read(Repository.ADDITION);
+        FileTracker removal = FileTracker.read(Repository.REMOVAL);
         //clear the adding stage
-        writeObject(Repository.ADDITION, new FileTracker());
-        writeObject(Repository.REMOVAL, new FileTracker());
+        new FileTracker().write(Repository.ADDITION);
+        new FileTracker().write(Repository.REMOVAL);
         //update tracked files
         Map<String, String> toAdd = addition.trackedFiles;
         Map<String, String> toRemove = removal.trackedFiles;
 
         if (toAdd.size() == 0 && toRemove.size() == 0) {
-            System.out.print("No changes added to the commit.");
-            System.exit(0);
+            throw error("No changes added to the commit.");
         }
-        this.trackedFiles.putAll(toAdd);
+        Map<String, String> files = new HashMap<>(getTrackedFiles());
+        files.putAll(toAdd);
         for (String fileToRemove : toRemove.keySet()) {
-            this.trackedFiles.remove(fileToRemove);
+            files.remove(fileToRemove);
         }
+        this.tree = Tree.write(files);
     }
 
     public static String curBranch() {
-        String branch = readContentsAsString(Repository.CURRENT);
+        String branch = Transaction.readString(Repository.CURRENT);
         return branch;
     }
 
-    public void printCommit() {
-        System.out.println("===");
-        System.out.println("commit " + this.getSha1());
-        System.out.println("Date: " + this.getTime());
-        System.out.println(this.getMessage());
-        System.out.println();
-        //System.out.print("debug:\n");
-        //debugCommit();
-    }
-
     private void debugCommit() {
         System.out.println("-------------");
         System.out.print(this);
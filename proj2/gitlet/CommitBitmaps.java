@@ -0,0 +1,178 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/**
+ * Reachability bitmaps: CWD/.gitlet/commit-bitmaps
+ * "GCBM" | version | count | per commit: id (20 raw bytes) | position | Bitmap
+ *
+ * The bitmap of a commit holds the commit-graph positions of the commit
+ * and all its ancestors. Positions never change while the graph is only
+ * appended to, and the file is deleted whenever the graph is rebuilt.
+ * A bitmap is kept for every branch head and HEAD: commit writes the
+ * bitmap of the new commit, its parents' bitmaps plus itself, and gc
+ * writes those of all branches. The bitmap of any other commit is made by
+ * walking down from it until the walk reaches commits with bitmaps.
+ * "is A an ancestor of B" is then one lookup, and "the commits of A that
+ * are not in B" and "everything a set of branches reaches" are set
+ * operations on bitmaps instead of walks over the whole history.
+ *
+ * @author winter
+ */
+class CommitBitmaps {
+    /**
+     * The file for the bitmaps: CWD/.gitlet/commit-bitmaps
+     */
+    static final File BITMAPS = join(Repository.GITLET_DIR, "commit-bitmaps");
+
+    private static final int MAGIC = 0x4743424d;
+    private static final int VERSION = 1;
+
+    /**
+     * the stored bitmaps by commit id, read on first use
+     */
+    private static Map<String, Bitmap> bitmaps;
+
+    /**
+     * forget the loaded bitmaps, so the next use reads the file again
+     */
+    static void reset() {
+        bitmaps = null;
+    }
+
+    /**
+     * drop all bitmaps, because the positions of the commit graph changed
+     */
+    static void clear() {
+        BITMAPS.delete();
+        bitmaps = new LinkedHashMap<>();
+    }
+
+    /**
+     * the positions of the commit at POS in GRAPH and of all its ancestors
+     */
+    static Bitmap reachable(CommitGraph graph, int pos) {
+        Map<String, Bitmap> stored = load(graph);
+        Bitmap bitmap = stored.get(graph.id(pos));
+        if (bitmap != null) {
+            return bitmap;
+        }
+        bitmap = new Bitmap();
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(pos);
+        while (!pending.isEmpty()) {
+            int c = pending.pop();
+            if (c < 0 || bitmap.contains(c)) {
+                continue;
+            }
+            Bitmap ancestors = stored.get(graph.id(c));
+            if (ancestors != null) {
+                bitmap.or(ancestors);
+                continue;
+            }
+            bitmap.add(c);
+            pending.push(graph.secondParent(c));
+            pending.push(graph.firstParent(c));
+        }
+        return bitmap;
+    }
+
+    /**
+     * store the bitmap of the new commit at POS in GRAPH, and drop those of
+     * commits that are no longer the head of a branch
+     */
+    static void add(CommitGraph graph, int pos) {
+        Bitmap bitmap = reachable(graph, pos);
+        Set<String> keep = heads();
+        keep.add(graph.id(pos));
+        bitmaps.keySet().retainAll(keep);
+        bitmaps.put(graph.id(pos), bitmap);
+        write(graph);
+    }
+
+    /**
+     * store the bitmaps of every branch head and HEAD, and only those
+     */
+    static void writeHeads() {
+        Set<String> ids = heads();
+        CommitGraph graph = CommitGraph.get(ids.toArray(new String[0]));
+        Map<String, Bitmap> heads = new LinkedHashMap<>();
+        for (String head : ids) {
+            heads.put(head, reachable(graph, graph.position(head)));
+        }
+        bitmaps = heads;
+        write(graph);
+    }
+
+    /**
+     * the commits branches and HEAD point to
+     */
+    private static Set<String> heads() {
+        Set<String> heads = new HashSet<>();
+        List<String> branches = plainFilenamesIn(Repository.BRANCH);
+        if (branches != null) {
+            for (String branch : branches) {
+                heads.add(Transaction.readString(join(Repository.BRANCH, branch)));
+            }
+        }
+        //init writes HEAD after its commit
+        if (Repository.HEAD.exists()) {
+            heads.add(Transaction.readString(Repository.HEAD));
+        }
+        return heads;
+    }
+
+    /**
+     * the stored bitmaps. a bitmap whose commit is not at the position it
+     * was written for belongs to an older graph and is dropped
+     */
+    private static Map<String, Bitmap> load(CommitGraph graph) {
+        if (bitmaps != null) {
+            return bitmaps;
+        }
+        bitmaps = new LinkedHashMap<>();
+        if (!BITMAPS.isFile()) {
+            return bitmaps;
+        }
+        ByteBuffer in = ByteBuffer.wrap(readContents(BITMAPS));
+        if (in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            return bitmaps;
+        }
+        int count = in.getInt();
+        byte[] raw = new byte[20];
+        for (int i = 0; i < count; i++) {
+            in.get(raw);
+            String id = toHex(raw, 0);
+            int pos = in.getInt();
+            Bitmap bitmap = Bitmap.decode(in);
+            if (pos < graph.size() && graph.id(pos).equals(id)) {
+                bitmaps.put(id, bitmap);
+            }
+        }
+        return bitmaps;
+    }
+
+    private static void write(CommitGraph graph) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(MAGIC).putInt(VERSION).putInt(bitmaps.size());
+        out.writeBytes(header.array());
+        for (Map.Entry<String, Bitmap> entry : bitmaps.entrySet()) {
+            out.writeBytes(toRaw(entry.getKey()));
+            out.writeBytes(ByteBuffer.allocate(4).putInt(graph.position(entry.getKey())).array());
+            out.writeBytes(entry.getValue().encode());
+        }
+        writeContentsAtomically(BITMAPS, out.toByteArray());
+    }
+}
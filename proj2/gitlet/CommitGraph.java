@@ -0,0 +1,360 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static gitlet.Utils.*;
+
+/**
+ * The commit graph: CWD/.gitlet/commit-graph
+ * "GCGR" | version | count | records
+ * each record: id (20 raw bytes) | root tree (20 raw bytes) | first parent
+ * | second parent | generation | commit time (seconds)
+ *
+ * Parents are record positions (-1 for none). Records are appended on
+ * every commit, so a parent always comes before its children. The
+ * generation of a commit is one more than the largest generation of its
+ * parents, which lets walks stop as soon as they pass below the
+ * generation of the commit they are looking for. The root tree lets gc
+ * walk the trees of the reachable commits without reading the commits.
+ *
+ * @author winter
+ */
+class CommitGraph {
+    /**
+     * The file for the commit graph: CWD/.gitlet/commit-graph
+     */
+    static final File GRAPH = join(Repository.GITLET_DIR, "commit-graph");
+
+    private static final int MAGIC = 0x47434752;
+    private static final int VERSION = 2;
+    private static final int HEADER = 12;
+    private static final int RECORD = 60;
+
+    private static final int PARENT1 = 1;
+    private static final int PARENT2 = 2;
+    private static final int STALE = 4;
+    private static final int RESULT = 8;
+
+    /**
+     * the loaded graph, read on first use
+     */
+    private static CommitGraph graph;
+
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+    private final List<String> trees = new ArrayList<>();
+    private int[] parent1 = new int[16];
+    private int[] parent2 = new int[16];
+    private int[] generation = new int[16];
+    private long[] time = new long[16];
+
+    /**
+     * forget the loaded graph, so the next use reads the file again
+     */
+    static void reset() {
+        graph = null;
+        CommitBitmaps.reset();
+    }
+
+    /**
+     * the graph of this repository, containing at least the commits IDS.
+     * the graph is rebuilt if one of them is missing, e.g. because it was
+     * written by an older gitlet
+     */
+    static CommitGraph get(String... ids) {
+        if (graph == null) {
+            graph = GRAPH.exists() ? read() : rebuild();
+        }
+        for (String id : ids) {
+            if (!graph.has(id)) {
+                graph = rebuild();
+                break;
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * record the new commit COMMIT in the graph
+     */
+    static void add(Commit commit) {
+        String second = commit instanceof MergedCommit
+                ? ((MergedCommit) commit).getSecondParent() : null;
+        CommitGraph g = get(commit.getParent(), second);
+        if (g.has(commit.getSha1())) {
+            return;
+        }
+        int pos = g.append(commit.getSha1(), commit.getTree(), g.position(commit.getParent()),
+                g.position(second), parseTime(commit.getTime()));
+        try (RandomAccessFile file = new RandomAccessFile(GRAPH, "rw")) {
+            file.seek(HEADER + (long) pos * RECORD);
+            file.write(g.record(pos));
+            file.seek(8);
+            file.writeInt(g.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        CommitBitmaps.add(g, pos);
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * the position of the commit ID, or -1 if ID is null
+     */
+    int position(String id) {
+        if (id == null) {
+            return -1;
+        }
+        return positions.get(id);
+    }
+
+    String id(int pos) {
+        return ids.get(pos);
+    }
+
+    /**
+     * the root tree of the commit at POS
+     */
+    String tree(int pos) {
+        return trees.get(pos);
+    }
+
+    int firstParent(int pos) {
+        return parent1[pos];
+    }
+
+    int secondParent(int pos) {
+        return parent2[pos];
+    }
+
+    int generation(int pos) {
+        return generation[pos];
+    }
+
+    long time(int pos) {
+        return time[pos];
+    }
+
+    /**
+     * the positions of commit POS and all its ancestors, see CommitBitmaps
+     */
+    Bitmap reachable(int pos) {
+        return CommitBitmaps.reachable(this, pos);
+    }
+
+    /**
+     * check if commit A is an ancestor of (or the same as) commit B
+     */
+    boolean isAncestor(int a, int b) {
+        return reachable(b).contains(a);
+    }
+
+    /**
+     * the commits reachable from commit A but not from commit B, newest position first
+     */
+    int[] only(int a, int b) {
+        int[] commits = reachable(a).andNot(reachable(b)).toArray();
+        for (int i = 0, j = commits.length - 1; i < j; i++, j--) {
+            int c = commits[i];
+            commits[i] = commits[j];
+            commits[j] = c;
+        }
+        return commits;
+    }
+
+    /**
+     * the best common ancestor of commits A and B.
+     * walks down from both commits in order of decreasing generation,
+     * painting each commit with the side(s) it is reachable from; a commit
+     * reachable from both sides is a common ancestor and everything below
+     * it is stale. The walk ends when only stale commits are left, and the
+     * common ancestor with the largest generation is not an ancestor of any
+     * other, so it is a lowest common ancestor.
+     */
+    int mergeBase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        int[] flags = new int[size()];
+        boolean[] queued = new boolean[size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> {
+            if (generation[x] != generation[y]) {
+                return Integer.compare(generation[y], generation[x]);
+            }
+            return Long.compare(time[y], time[x]);
+        });
+        flags[a] |= PARENT1;
+        flags[b] |= PARENT2;
+        queue.add(a);
+        queue.add(b);
+        queued[a] = true;
+        queued[b] = true;
+        int active = 2;
+        int best = -1;
+        while (active > 0) {
+            int c = queue.poll();
+            queued[c] = false;
+            int f = flags[c] & (PARENT1 | PARENT2 | STALE);
+            if ((f & STALE) == 0) {
+                active -= 1;
+            }
+            if (f == (PARENT1 | PARENT2)) {
+                if ((flags[c] & RESULT) == 0) {
+                    flags[c] |= RESULT;
+                    if (best < 0 || generation[c] > generation[best]) {
+                        best = c;
+                    }
+                }
+                f |= STALE;
+            }
+            for (int p : new int[]{parent1[c], parent2[c]}) {
+                if (p < 0 || (flags[p] & f) == f) {
+                    continue;
+                }
+                boolean wasStale = (flags[p] & STALE) != 0;
+                flags[p] |= f;
+                boolean isStale = (flags[p] & STALE) != 0;
+                if (!queued[p]) {
+                    queue.add(p);
+                    queued[p] = true;
+                    active += isStale ? 0 : 1;
+                } else if (!wasStale && isStale) {
+                    active -= 1;
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean has(String id) {
+        return id == null || positions.containsKey(id);
+    }
+
+    private int append(String id, String tree, int first, int second, long seconds) {
+        int pos = ids.size();
+        if (pos == parent1.length) {
+            parent1 = Arrays.copyOf(parent1, pos * 2);
+            parent2 = Arrays.copyOf(parent2, pos * 2);
+            generation = Arrays.copyOf(generation, pos * 2);
+            time = Arrays.copyOf(time, pos * 2);
+        }
+        ids.add(id);
+        trees.add(tree);
+        positions.put(id, pos);
+        parent1[pos] = first;
+        parent2[pos] = second;
+        int gen = 1;
+        if (first >= 0) {
+            gen = Math.max(gen, generation[first] + 1);
+        }
+        if (second >= 0) {
+            gen = Math.max(gen, generation[second] + 1);
+        }
+        generation[pos] = gen;
+        time[pos] = seconds;
+        return pos;
+    }
+
+    private byte[] record(int pos) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD);
+        buffer.put(toRaw(ids.get(pos)));
+        buffer.put(toRaw(trees.get(pos)));
+        buffer.putInt(parent1[pos]);
+        buffer.putInt(parent2[pos]);
+        buffer.putInt(generation[pos]);
+        buffer.putLong(time[pos]);
+        return buffer.array();
+    }
+
+    private static CommitGraph read() {
+        ByteBuffer buffer = ByteBuffer.wrap(readContents(GRAPH));
+        if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION) {
+            return rebuild();
+        }
+        int count = buffer.getInt();
+        CommitGraph g = new CommitGraph();
+        byte[] raw = new byte[20];
+        byte[] tree = new byte[20];
+        for (int i = 0; i < count; i++) {
+            buffer.get(raw);
+            buffer.get(tree);
+            int first = buffer.getInt();
+            int second = buffer.getInt();
+            buffer.getInt();
+            g.append(toHex(raw, 0), toHex(tree, 0), first, second, buffer.getLong());
+        }
+        return g;
+    }
+
+    /**
+     * rebuild the graph from every commit in the object store,
+     * writing parents before their children
+     */
+    static CommitGraph rebuild() {
+        CommitBitmaps.clear();
+        CommitGraph g = new CommitGraph();
+        for (String id : CommitIndex.ids()) {
+            Deque<Commit> pending = new ArrayDeque<>();
+            if (!g.positions.containsKey(id)) {
+                pending.push(Commit.getCommit(id));
+            }
+            while (!pending.isEmpty()) {
+                Commit commit = pending.peek();
+                String second = commit instanceof MergedCommit
+                        ? ((MergedCommit) commit).getSecondParent() : null;
+                if (!g.has(commit.getParent())) {
+                    pending.push(Commit.getCommit(commit.getParent()));
+                } else if (!g.has(second)) {
+                    pending.push(Commit.getCommit(second));
+                } else {
+                    pending.pop();
+                    if (!g.has(commit.getSha1())) {
+                        g.append(commit.getSha1(), commit.getTree(),
+                                commit.getParent() == null
+                                        ? -1 : g.positions.get(commit.getParent()),
+                                second == null ? -1 : g.positions.get(second),
+                                parseTime(commit.getTime()));
+                    }
+                }
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + g.size() * RECORD);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(g.size());
+        for (int i = 0; i < g.size(); i++) {
+            buffer.put(g.record(i));
+        }
+        writeContentsAtomically(GRAPH, buffer.array());
+        return g;
+    }
+
+    /**
+     * the commit time TIME in seconds since the epoch, or 0 if it cannot be parsed
+     */
+    static long parseTime(String time) {
+        try {
+            return new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z")
+                    .parse(time).getTime() / 1000;
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * A sorted index of all commit ids: CWD/.gitlet/commit-index
+ * "GCIX" | version | sorted count | sorted ids | added ids
+ * (20 raw bytes each)
+ *
+ * The file is memory-mapped, so resolving an abbreviated id is a binary
+ * search over the mapped bytes instead of a listing of every commit.
+ * A new commit is appended after the sorted ids, so a commit writes 20
+ * bytes instead of the whole index; the added ids are searched one by one
+ * and are merged into the sorted ids once there are more than an eighth
+ * as many of them, which keeps both the search and the amortized cost of
+ * a commit small.
+ * It is rebuilt from the object store when missing, and when an id is not
+ * found while the object store has a different number of commits, e.g.
+ * because a command died between writing a commit and indexing it.
+ *
+ * @author winter
+ */
+class CommitIndex {
+    /**
+     * The file for the sorted commit ids: CWD/.gitlet/commit-index
+     */
+    static final File INDEX = join(Repository.GITLET_DIR, "commit-index");
+
+    private static final int MAGIC = 0x47434958;
+    private static final int VERSION = 2;
+    private static final int HEADER = 12;
+    /** the most added ids, before they are merged, of an index with few sorted ids */
+    private static final int MIN_ADDED = 64;
+
+    /**
+     * the mapped index, loaded on first use
+     */
+    private static MappedByteBuffer mapped;
+    /** the number of ids, sorted and added */
+    private static int count;
+    private static int sorted;
+
+    /**
+     * forget the mapped index, so the next use maps the file again
+     */
+    static void reset() {
+        mapped = null;
+        count = 0;
+        sorted = 0;
+    }
+
+    /**
+     * resolve the full id of the commit whose id starts with PREFIX.
+     * returns null if there is no such commit.
+     */
+    static String resolve(String prefix) {
+        load();
+        String lowered = prefix.toLowerCase();
+        if (!lowered.matches("[0-9a-f]*")) {
+            return null;
+        }
+        String id = find(lowered);
+        if (id == null && ObjectStore.ids(ObjectStore.COMMIT).size() != count) {
+            rebuild();
+            id = find(lowered);
+        }
+        return id;
+    }
+
+    /**
+     * the number of commits
+     */
+    static int size() {
+        load();
+        return count;
+    }
+
+    /**
+     * the id at position POS: the sorted ids, then the added ones
+     */
+    static String id(int pos) {
+        load();
+        return idAt(pos);
+    }
+
+    /**
+     * all commit ids in sorted order
+     */
+    static List<String> ids() {
+        load();
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(idAt(i));
+        }
+        if (count > sorted) {
+            Collections.sort(result);
+        }
+        return result;
+    }
+
+    /**
+     * add the new commit ID to the index
+     */
+    static void add(String id) {
+        load();
+        if (id.equals(find(id))) {
+            return;
+        }
+        if (count - sorted >= Math.max(MIN_ADDED, sorted / 8)) {
+            List<String> ids = ids();
+            ids.add(id);
+            Collections.sort(ids);
+            write(ids);
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(INDEX, "rw")) {
+            //a partly written id of a command that died is overwritten
+            file.setLength(HEADER + (count + 1) * 20L);
+            file.seek(HEADER + count * 20L);
+            file.write(toRaw(id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        mapped = null;
+        load();
+    }
+
+    /**
+     * rebuild the index from all commits in the object store
+     */
+    static void rebuild() {
+        write(ObjectStore.ids(ObjectStore.COMMIT));
+    }
+
+    /**
+     * the id starting with the lowercase hexadecimal PREFIX, or null.
+     * throws if more than one id starts with it
+     */
+    private static String find(String prefix) {
+        String found = null;
+        int pos = lowerBound(prefix);
+        if (pos < sorted && startsWith(pos, prefix)) {
+            if (pos + 1 < sorted && startsWith(pos + 1, prefix)) {
+                throw error("Ambiguous commit id.");
+            }
+            found = idAt(pos);
+        }
+        for (int i = sorted; i < count; i++) {
+            if (startsWith(i, prefix)) {
+                if (found != null) {
+                    throw error("Ambiguous commit id.");
+                }
+                found = idAt(i);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * whether the id at POS starts with the hexadecimal PREFIX
+     */
+    private static boolean startsWith(int pos, String prefix) {
+        int base = HEADER + pos * 20;
+        for (int i = 0; i < prefix.length() && i < 40; i++) {
+            int b = mapped.get(base + i / 2) & 0xff;
+            int digit = i % 2 == 0 ? b >>> 4 : b & 0xf;
+            if (digit != Character.digit(prefix.charAt(i), 16)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the position of the first sorted id not less than the hexadecimal PREFIX
+     */
+    private static int lowerBound(String prefix) {
+        byte[] key = new byte[20];
+        for (int i = 0; i < prefix.length() && i < 40; i++) {
+            int digit = Character.digit(prefix.charAt(i), 16);
+            key[i / 2] |= (byte) (i % 2 == 0 ? digit << 4 : digit);
+        }
+        int lo = 0;
+        int hi = sorted;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareAt(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int compareAt(int pos, byte[] key) {
+        int base = HEADER + pos * 20;
+        for (int i = 0; i < 20; i++) {
+            int cmp = Integer.compare(mapped.get(base + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static String idAt(int pos) {
+        byte[] raw = new byte[20];
+        mapped.get(HEADER + pos * 20, raw);
+        return toHex(raw, 0);
+    }
+
+    private static void load() {
+        if (mapped != null) {
+            return;
+        }
+        if (!INDEX.exists()) {
+            rebuild();
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(INDEX, "r")) {
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (mapped.capacity() < HEADER
+                || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            rebuild();
+            return;
+        }
+        sorted = mapped.getInt(8);
+        count = (mapped.capacity() - HEADER) / 20;
+        if (sorted > count) {
+            rebuild();
+        }
+    }
+
+    /**
+     * write the sorted IDS as the new index and map it
+     */
+    private static void write(List<String> ids) {
+        byte[] content = new byte[HEADER + ids.size() * 20];
+        putInt(content, 0, MAGIC);
+        putInt(content, 4, VERSION);
+        putInt(content, 8, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            System.arraycopy(toRaw(ids.get(i)), 0, content, HEADER + i * 20, 20);
+        }
+        writeContentsAtomically(INDEX, content);
+        mapped = null;
+        load();
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static gitlet.Utils.*;
+
+/**
+ * Prints gitlet log and gitlet global-log.
+ * Commits are read one at a time while printing, so the first page of a
+ * long history costs as much as a short history: log follows the first
+ * parents from HEAD, and global-log walks the commit index in order.
+ * The output is buffered and written a page at a time, and the walk stops
+ * once nobody reads it any more, e.g. when a pipe to head was closed.
+ * options: -n [count] --since [yyyy-MM-dd or "yyyy-MM-dd HH:mm:ss"] --oneline
+ * --not [branch], for log: the commits reachable from HEAD but not from
+ * the branch, through both parents of merges, newest first
+ *
+ * @author winter
+ */
+class CommitLog {
+    /** the number of chars written at once */
+    private static final int PAGE = 1 << 16;
+    private static final String[] DATE_FORMATS = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd"};
+
+    private int limit = Integer.MAX_VALUE;
+    /** in seconds since the epoch */
+    private long since = Long.MIN_VALUE;
+    private boolean oneline;
+    private String excluded;
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * the log printed with OPTIONS
+     */
+    static CommitLog of(String[] options) {
+        CommitLog log = new CommitLog();
+        for (int i = 0; i < options.length; i++) {
+            switch (options[i]) {
+                case "-n":
+                    if (i + 1 >= options.length || !options[i + 1].matches("\\d{1,9}")) {
+                        throw error("Incorrect operands.");
+                    }
+                    i += 1;
+                    log.limit = Integer.parseInt(options[i]);
+                    break;
+                case "--since":
+                    if (i + 1 >= options.length) {
+                        throw error("Incorrect operands.");
+                    }
+                    i += 1;
+                    log.since = parseDate(options[i]);
+                    break;
+                case "--oneline":
+                    log.oneline = true;
+                    break;
+                case "--not":
+                    if (i + 1 >= options.length) {
+                        throw error("Incorrect operands.");
+                    }
+                    i += 1;
+                    log.excluded = options[i];
+                    break;
+                default:
+                    throw error("Incorrect operands.");
+            }
+        }
+        return log;
+    }
+
+    /**
+     * the branch given with --not, or null
+     */
+    String excluded() {
+        return excluded;
+    }
+
+    /**
+     * print the commits of IDS. the ids are in order of time if ORDERED,
+     * so the walk ends at the first commit older than --since
+     */
+    void print(Iterator<String> ids, boolean ordered) {
+        int printed = 0;
+        while (printed < limit && ids.hasNext()) {
+            String id = ids.next();
+            Commit commit = Commit.getCommit(id);
+            if (since != Long.MIN_VALUE && CommitGraph.parseTime(commit.getTime()) < since) {
+                if (ordered) {
+                    break;
+                }
+                continue;
+            }
+            append(id, commit);
+            printed += 1;
+            if (buffer.length() >= PAGE && !flush()) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * the ids from HEAD along first parents
+     */
+    static Iterator<String> firstParents(String head) {
+        return new Iterator<String>() {
+            private String next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                String id = next;
+                next = Commit.getCommit(id).getParent();
+                return id;
+            }
+        };
+    }
+
+    /**
+     * the ids of the commits reachable from HEAD but not from OTHER, newest first
+     */
+    static Iterator<String> only(String head, String other) {
+        CommitGraph graph = CommitGraph.get(head, other);
+        int[] commits = graph.only(graph.position(head), graph.position(other));
+        return Arrays.stream(commits).mapToObj(graph::id).iterator();
+    }
+
+    /**
+     * the ids of all commits in the order of the commit index
+     */
+    static Iterator<String> all() {
+        return new Iterator<String>() {
+            private final int size = CommitIndex.size();
+            private int pos;
+
+            @Override
+            public boolean hasNext() {
+                return pos < size;
+            }
+
+            @Override
+            public String next() {
+                if (pos >= size) {
+                    throw new NoSuchElementException();
+                }
+                pos += 1;
+                return CommitIndex.id(pos - 1);
+            }
+        };
+    }
+
+    private void append(String id, Commit commit) {
+        String newline = System.lineSeparator();
+        if (oneline) {
+            String message = commit.getMessage();
+            int end = message.indexOf('\n');
+            buffer.append(id, 0, 7).append(' ')
+                    .append(end < 0 ? message : message.substring(0, end)).append(newline);
+            return;
+        }
+        buffer.append("===").append(newline)
+                .append("commit ").append(id).append(newline)
+                .append("Date: ").append(commit.getTime()).append(newline)
+                .append(commit.getMessage()).append(newline)
+                .append(newline);
+    }
+
+    /**
+     * write the buffer out. returns false if the output was closed
+     */
+    private boolean flush() {
+        System.out.append(buffer);
+        buffer.setLength(0);
+        return !System.out.checkError();
+    }
+
+    private static long parseDate(String date) {
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat parser = new SimpleDateFormat(format);
+            parser.setLenient(false);
+            try {
+                if (date.length() == format.length()) {
+                    return parser.parse(date).getTime() / 1000;
+                }
+            } catch (ParseException excp) {
+                //try the next format
+            }
+        }
+        throw error("Incorrect operands.");
+    }
+}
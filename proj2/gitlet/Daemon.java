@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static gitlet.Utils.*;
+
+/**
+ * gitlet serve
+ * Runs commands for gitlet.Client in one long-lived process, so they pay
+ * neither JVM startup nor cold caches: decoded commits, trees and blobs,
+ * the index and the packs stay loaded between commands. Commands run one
+ * at a time, each under the RepoLock like a command of its own process,
+ * so other gitlet processes can still use the repository.
+ * The daemon listens on a Unix-domain socket and stops when the socket
+ * file is deleted or the process is killed.
+ * request: argument count | arguments (UTF)
+ * response: frames of (STDOUT or STDERR | length | bytes), then EXIT | exit code
+ *
+ * @author winter
+ */
+class Daemon {
+    /**
+     * The socket of the daemon: CWD/.gitlet/daemon.sock
+     */
+    static final File SOCKET = join(Repository.GITLET_DIR, "daemon.sock");
+
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+    static final int EXIT = 3;
+
+    /**
+     * how often the daemon checks that its socket file still exists, in milliseconds
+     */
+    private static final int POLL_MILLIS = 1000;
+
+    static void serve() {
+        SOCKET.delete();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(SOCKET::delete));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            while (SOCKET.exists()) {
+                selector.select(POLL_MILLIS);
+                selector.selectedKeys().clear();
+                SocketChannel client;
+                while ((client = server.accept()) != null) {
+                    try (SocketChannel c = client) {
+                        c.configureBlocking(true);
+                        handle(c);
+                    } catch (IOException excp) {
+                        //the client went away; wait for the next one
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * run the command sent by CLIENT with its output sent back
+     */
+    private static void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+        PrintStream stdout = new PrintStream(new FrameStream(out, STDOUT));
+        PrintStream stderr = new PrintStream(new FrameStream(out, STDERR));
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        System.setOut(stdout);
+        System.setErr(stderr);
+        int code = 0;
+        try {
+            Main.Options options = Main.Options.parse(args);
+            args = options.command;
+            if (options.stats) {
+                LruCache.resetStats();
+            }
+            if (options.profile) {
+                Profile.enable(args.length > 0 ? args[0] : "", false);
+            }
+            try {
+                Main.run(args);
+            } catch (GitletException excp) {
+                System.out.print(excp.getMessage());
+            }
+            Profile.disable();
+            options.print(System.err);
+        } catch (RuntimeException | Error excp) {
+            Profile.disable();
+            //the process of a command would have died here
+            Transaction.abort();
+            System.err.print("Exception in thread \"main\" ");
+            excp.printStackTrace();
+            code = 1;
+        } finally {
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        stdout.flush();
+        stderr.flush();
+        out.writeByte(EXIT);
+        out.writeInt(code);
+        out.flush();
+    }
+
+    /**
+     * Sends everything written to it as frames of one KIND.
+     */
+    private static class FrameStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int kind;
+
+        FrameStream(DataOutputStream out, int kind) {
+            this.out = out;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            out.writeByte(kind);
+            out.writeInt(len);
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Delta encoding of one blob against another.
+ * A delta is: base size | result size | instructions, all sizes as varints.
+ * An instruction byte 1..127 inserts that many literal bytes that follow it;
+ * the byte 0 copies (varint offset, varint length) from the base.
+ *
+ * @author winter
+ */
+class Delta {
+    /** the length of the blocks of the base that are indexed */
+    private static final int BLOCK = 16;
+    private static final int MAX_INSERT = 127;
+    private static final int COPY = 0;
+
+    /**
+     * the delta that turns BASE into TARGET
+     */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 8 + 16);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        int[] table = index(base);
+        int mask = table.length - 1;
+        int insertStart = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            int candidate = table[hash(target, i) & mask];
+            if (candidate < 0 || !Arrays.equals(base, candidate, candidate + BLOCK,
+                    target, i, i + BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int start = candidate;
+            int end = candidate + BLOCK;
+            int from = i;
+            while (start > 0 && from > insertStart && base[start - 1] == target[from - 1]) {
+                start -= 1;
+                from -= 1;
+            }
+            int to = i + BLOCK;
+            while (end < base.length && to < target.length && base[end] == target[to]) {
+                end += 1;
+                to += 1;
+            }
+            writeInsert(out, target, insertStart, from);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, end - start);
+            i = to;
+            insertStart = to;
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * apply DELTA to BASE
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw new IllegalArgumentException("delta does not match its base");
+        }
+        byte[] result = new byte[(int) readVarint(delta, pos)];
+        int out = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int offset = (int) readVarint(delta, pos);
+                int length = (int) readVarint(delta, pos);
+                System.arraycopy(base, offset, result, out, length);
+                out += length;
+            } else {
+                System.arraycopy(delta, pos[0], result, out, op);
+                pos[0] += op;
+                out += op;
+            }
+        }
+        if (out != result.length) {
+            throw new IllegalArgumentException("corrupted delta");
+        }
+        return result;
+    }
+
+    /**
+     * a hash table from the hash of every BLOCK-aligned block of BASE to its offset
+     */
+    private static int[] index(byte[] base) {
+        int blocks = base.length / BLOCK;
+        int size = Integer.highestOneBit(Math.max(blocks, 1) * 2);
+        int[] table = new int[size];
+        Arrays.fill(table, -1);
+        for (int b = blocks - 1; b >= 0; b--) {
+            table[hash(base, b * BLOCK) & (size - 1)] = b * BLOCK;
+        }
+        return table;
+    }
+
+    private static int hash(byte[] bytes, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i++) {
+            h = h * 31 + bytes[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * read a varint from BYTES at POS[0], advancing POS[0]
+     */
+    static long readVarint(byte[] bytes, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = bytes[pos[0]++] & 0xff;
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
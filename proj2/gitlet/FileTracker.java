@@ -1,7 +1,6 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -9,7 +8,7 @@ import java.util.Set;
 
 import static gitlet.Utils.*;
 
-public class FileTracker implements Serializable {
+public class FileTracker {
     protected Map<String, String> trackedFiles;
 
     public FileTracker(Map<String, String> trackedFiles) {
@@ -20,41 +19,34 @@ public class FileTracker implements Serializable {
         this.trackedFiles = new HashMap<>();
     }
 
-
     /**
-     * add file for "add"
+     * read the staging area stored in FILE, as updated by this command
      */
-    public void add(File file) {
-        String fileName = file.getName();
-        String version = fileSha1(file);
-
-        Commit cur = Commit.getCurCommit();
-        Map<String, String> curTrackedFiles = cur.trackedFiles;
-
-        String curVersion = curTrackedFiles.getOrDefault(fileName, "");
+    public static FileTracker read(File file) {
+        return ObjectCodec.decodeTracker(Transaction.read(file));
+    }
 
-        //If the current working version of the file is
-        // identical to the version in the current commit
-        if (curVersion.equals(version)) {
-            this.trackedFiles.remove(fileName);
-        } else {
-            this.trackedFiles.put(fileName, version);
-        }
+    /**
+     * store this staging area in FILE when the command's transaction commits
+     */
+    public void write(File file) {
+        Transaction.write(file, ObjectCodec.encode(this));
     }
 
     public void remove(File file) {
-        this.trackedFiles.remove(file.getName());
+        this.trackedFiles.remove(WorkingTree.path(file));
     }
 
     public void put(File file) {
-        this.trackedFiles.put(file.getName(), fileSha1(file));
+        this.trackedFiles.put(WorkingTree.path(file), Index.sha1(file));
     }
 
     public boolean containsFile(File file) {
-        String sha1 = fileSha1(file);
-        return this.trackedFiles.containsKey(file.getName())
+        String sha1 = Index.sha1(file);
+        String path = WorkingTree.path(file);
+        return this.trackedFiles.containsKey(path)
                 &&
-                sha1.equals(this.trackedFiles.get(file.getName()));
+                sha1.equals(this.trackedFiles.get(path));
     }
 
     public Set<String> getFileNames() {
@@ -0,0 +1,245 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static gitlet.Utils.*;
+
+/**
+ * The stat cache of the working directory: CWD/.gitlet/index
+ * "GSTI" | version | count | entries
+ * each entry: file path | size | mtime (ns) | inode | sha1Code (20 raw bytes)
+ *
+ * A file is only hashed again when its size, mtime or inode differ from
+ * the cached entry. An entry whose mtime is not older than the mtime of
+ * the index file itself may have been modified again within the same
+ * clock tick, so it is never trusted and always hashed.
+ *
+ * @author winter
+ */
+class Index {
+    /**
+     * The file for the stat cache: CWD/.gitlet/index
+     */
+    static final File INDEX = join(Repository.GITLET_DIR, "index");
+
+    private static final int MAGIC = 0x47535449;
+    private static final int VERSION = 1;
+
+    /**
+     * cached entries by file path, loaded on first use
+     */
+    private static volatile Map<String, Entry> entries;
+    private static long stamp;
+    private static volatile boolean dirty;
+
+    /**
+     * Stat data and content sha1Code of one working file.
+     */
+    private static class Entry {
+        final long size;
+        final long mtime;
+        final long inode;
+        final String sha1;
+        /** true if SHA1 was computed or written by this command */
+        boolean verified;
+
+        Entry(long size, long mtime, long inode, String sha1) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+            this.sha1 = sha1;
+        }
+
+        boolean matches(Entry other) {
+            return size == other.size && mtime == other.mtime && inode == other.inode;
+        }
+    }
+
+    /**
+     * the sha1Code of the content of FILE, hashing it only if its stat data changed
+     */
+    static String sha1(File file) {
+        String sha1 = cachedSha1(file);
+        if (sha1 != null) {
+            return sha1;
+        }
+        return hash(file, Utils::fileSha1);
+    }
+
+    /**
+     * the sha1Code of the content of FILE computed by HASHER, which reads
+     * FILE, e.g. while storing it. the result is cached with the stat data
+     * taken before hashing, and only if FILE did not change meanwhile, so a
+     * file modified while it is hashed is never paired with the old sha1Code
+     */
+    static String hash(File file, Function<File, String> hasher) {
+        load();
+        Entry before = stat(file, null);
+        String sha1 = hasher.apply(file);
+        if (stat(file, null).matches(before)) {
+            Entry entry = new Entry(before.size, before.mtime, before.inode, sha1);
+            entry.verified = true;
+            entries.put(WorkingTree.path(file), entry);
+            dirty = true;
+        }
+        return sha1;
+    }
+
+    /**
+     * the cached sha1Code of the content of FILE, or null if FILE must be hashed
+     */
+    static String cachedSha1(File file) {
+        load();
+        Entry stat = stat(file, null);
+        Entry cached = entries.get(WorkingTree.path(file));
+        if (cached != null && cached.matches(stat)
+                && (cached.verified || stat.mtime < stamp)) {
+            return cached.sha1;
+        }
+        return null;
+    }
+
+    /**
+     * record that FILE was just written with the content SHA1,
+     * e.g. by checkout, so it does not need to be hashed later
+     */
+    static void record(File file, String sha1) {
+        load();
+        Entry entry = stat(file, sha1);
+        entry.verified = true;
+        entries.put(WorkingTree.path(file), entry);
+        dirty = true;
+    }
+
+    /**
+     * write the index back if anything changed in this command
+     */
+    static void save() {
+        if (!dirty || !Repository.GITLET_DIR.exists()) {
+            return;
+        }
+        File temp = tempFileFor(INDEX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.inode);
+                out.write(toRaw(entry.sha1));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), INDEX.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stamp = toNanos(Files.getLastModifiedTime(INDEX.toPath()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = false;
+    }
+
+    /**
+     * prepare for the next command in this process: the loaded entries are
+     * kept only if the index file is still the one they were loaded from or saved to
+     */
+    static synchronized void refresh() {
+        if (entries == null) {
+            return;
+        }
+        try {
+            if (INDEX.exists() && toNanos(Files.getLastModifiedTime(INDEX.toPath())) == stamp) {
+                for (Entry entry : entries.values()) {
+                    entry.verified = false;
+                }
+                return;
+            }
+        } catch (IOException excp) {
+            //read the index again
+        }
+        entries = null;
+        dirty = false;
+    }
+
+    /**
+     * read the index on first use. the entries may be looked up and recorded
+     * from several threads, e.g. by "add" hashing files in parallel
+     */
+    private static synchronized void load() {
+        if (entries != null) {
+            return;
+        }
+        Map<String, Entry> loaded = new ConcurrentHashMap<>();
+        stamp = 0;
+        if (!INDEX.exists()) {
+            entries = loaded;
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(INDEX.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                entries = loaded;
+                return;
+            }
+            stamp = toNanos(Files.getLastModifiedTime(INDEX.toPath()));
+            int count = in.readInt();
+            byte[] raw = new byte[20];
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                long inode = in.readLong();
+                in.readFully(raw);
+                loaded.put(name, new Entry(size, mtime, inode, toHex(raw, 0)));
+            }
+        } catch (IOException excp) {
+            loaded.clear();
+            stamp = 0;
+        }
+        entries = loaded;
+    }
+
+    /**
+     * the stat data of FILE with the content SHA1
+     */
+    private static Entry stat(File file, String sha1) {
+        Path path = file.toPath();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path,
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            long inode = 0;
+            Object key = attrs.fileKey();
+            if (key != null) {
+                inode = key.hashCode();
+            }
+            return new Entry(attrs.size(), toNanos(attrs.lastModifiedTime()), inode, sha1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static long toNanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+}
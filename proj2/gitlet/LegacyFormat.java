@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Reads commits and staging areas written with Java serialization by older gitlets.
+ * Two layouts exist: commits that embedded their tracked files (Commit
+ * extended FileTracker), and commits that pointed to a tree. Each one is
+ * mirrored here by classes with the same fields and serialVersionUIDs, and
+ * the stream is read with one set of classes, then with the other.
+ *
+ * @author winter
+ */
+class LegacyFormat {
+    /** the first two bytes of every Java serialization stream */
+    private static final int STREAM_MAGIC = 0xaced;
+
+    static boolean isLegacy(byte[] bytes) {
+        return bytes.length >= 2 && ((bytes[0] & 0xff) << 8 | (bytes[1] & 0xff)) == STREAM_MAGIC;
+    }
+
+    /**
+     * the commit serialized in BYTES. a commit that embedded its tracked
+     * files gets their tree written
+     */
+    static Commit readCommit(byte[] bytes) {
+        Object commit;
+        try {
+            commit = read(bytes, true);
+        } catch (InvalidClassException excp) {
+            try {
+                commit = read(bytes, false);
+            } catch (InvalidClassException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+        if (commit instanceof TreeCommit) {
+            TreeCommit c = (TreeCommit) commit;
+            if (c instanceof TreeMergedCommit) {
+                return new MergedCommit(c.message, c.time, c.parent,
+                        ((TreeMergedCommit) c).secondParent, c.tree);
+            }
+            return new Commit(c.message, c.time, c.parent, c.tree);
+        }
+        MapCommit c = (MapCommit) commit;
+        String tree = Tree.write(c.trackedFiles);
+        if (c instanceof MapMergedCommit) {
+            return new MergedCommit(c.message, c.time, c.parent,
+                    ((MapMergedCommit) c).secondParent, tree);
+        }
+        return new Commit(c.message, c.time, c.parent, tree);
+    }
+
+    static FileTracker readTracker(byte[] bytes) {
+        try {
+            return new FileTracker(((Tracker) read(bytes, true)).trackedFiles);
+        } catch (InvalidClassException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static Object read(byte[] bytes, boolean trees) throws InvalidClassException {
+        try (ObjectInputStream in = new LegacyInputStream(bytes, trees)) {
+            return in.readObject();
+        } catch (InvalidClassException excp) {
+            throw excp;
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Reads the gitlet classes of a stream as the mirrors of one layout.
+     * the descriptor of the mirror replaces the one in the stream, so the
+     * mirror must declare exactly the fields of the class it stands for
+     */
+    private static class LegacyInputStream extends ObjectInputStream {
+        private final boolean trees;
+
+        LegacyInputStream(byte[] bytes, boolean trees) throws IOException {
+            super(new ByteArrayInputStream(bytes));
+            this.trees = trees;
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+                throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> mirror = mirror(desc.getName());
+            if (mirror == null) {
+                return desc;
+            }
+            ObjectStreamClass local = ObjectStreamClass.lookup(mirror);
+            if (local.getSerialVersionUID() != desc.getSerialVersionUID()) {
+                throw new InvalidClassException(desc.getName(), "written in another layout");
+            }
+            return local;
+        }
+
+        private Class<?> mirror(String name) {
+            switch (name) {
+                case "gitlet.Commit":
+                    return trees ? TreeCommit.class : MapCommit.class;
+                case "gitlet.MergedCommit":
+                    return trees ? TreeMergedCommit.class : MapMergedCommit.class;
+                case "gitlet.FileTracker":
+                    return Tracker.class;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /** FileTracker, also the superclass of commits that embedded their files */
+    static class Tracker implements Serializable {
+        private static final long serialVersionUID = 5268579849679241244L;
+        Map<String, String> trackedFiles;
+    }
+
+    /** a commit that embedded its tracked files */
+    static class MapCommit extends Tracker {
+        private static final long serialVersionUID = 3974463452962583427L;
+        String author;
+        String message;
+        String parent;
+        String time;
+    }
+
+    static class MapMergedCommit extends MapCommit {
+        private static final long serialVersionUID = 8067153407683581890L;
+        String secondParent;
+    }
+
+    /** a commit that pointed to a tree */
+    static class TreeCommit implements Serializable {
+        private static final long serialVersionUID = -5152565211718300079L;
+        String author;
+        String message;
+        String parent;
+        String time;
+        String tree;
+    }
+
+    static class TreeMergedCommit extends TreeCommit {
+        private static final long serialVersionUID = 8067153407683581890L;
+        String secondParent;
+    }
+}
@@ -0,0 +1,356 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line diffs of blobs.
+ * A blob is split into lines where each line keeps its terminator, and
+ * the lines of the blobs compared are numbered so equal lines get equal
+ * numbers; the bytes are never decoded into Strings.
+ * Lines equal at both ends are matched first. Then, like git's histogram
+ * diff, the rarest line both sides share anchors a run of matching lines,
+ * and the parts before and after it are diffed the same way. Where no line
+ * is rare enough, the diff is Myers' O(ND) algorithm in linear space: the
+ * middle snake of the edit graph is found searching forward from the start
+ * and backward from the end at once, and splits the part instead.
+ *
+ * @author winter
+ */
+class LineDiff {
+    /**
+     * The lines of a blob: line i is bytes[starts[i]] up to starts[i + 1].
+     */
+    static final class Lines {
+        final byte[] bytes;
+        final int[] starts;
+
+        private Lines(byte[] bytes, int[] starts) {
+            this.bytes = bytes;
+            this.starts = starts;
+        }
+
+        int size() {
+            return starts.length - 1;
+        }
+
+        int start(int line) {
+            return starts[line];
+        }
+
+        int length(int line) {
+            return starts[line + 1] - starts[line];
+        }
+    }
+
+    /**
+     * the lines of CONTENT. a last line without a newline is a line too
+     */
+    static Lines split(byte[] content) {
+        int count = 0;
+        for (byte b : content) {
+            if (b == '\n') {
+                count += 1;
+            }
+        }
+        boolean unterminated = content.length > 0 && content[content.length - 1] != '\n';
+        int[] starts = new int[count + (unterminated ? 1 : 0) + 1];
+        int line = 1;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] == '\n') {
+                starts[line++] = i + 1;
+            }
+        }
+        starts[starts.length - 1] = content.length;
+        return new Lines(content, starts);
+    }
+
+    /**
+     * number the lines of all TEXTS, so two lines get the same number
+     * exactly if they have the same bytes
+     */
+    static int[][] number(Lines... texts) {
+        Map<Key, Integer> numbers = new HashMap<>();
+        int[][] result = new int[texts.length][];
+        for (int t = 0; t < texts.length; t++) {
+            Lines text = texts[t];
+            result[t] = new int[text.size()];
+            for (int i = 0; i < text.size(); i++) {
+                Key key = new Key(text.bytes, text.start(i), text.length(i));
+                Integer number = numbers.putIfAbsent(key, numbers.size());
+                result[t][i] = number == null ? numbers.size() - 1 : number;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The longest chain of equal lines a line may have to anchor a diff.
+     */
+    private static final int MAX_CHAIN = 64;
+
+    /**
+     * the longest common subsequence of A and B as blocks of matching
+     * lines {start in A, start in B, length}, in order
+     */
+    static List<int[]> matches(int[] a, int[] b) {
+        return matches(a, b, false);
+    }
+
+    /**
+     * a common subsequence of A and B as blocks of matching lines, in order.
+     * with HISTOGRAM, rare lines are matched first, which reads better but
+     * may match fewer lines than the longest common subsequence
+     */
+    static List<int[]> matches(int[] a, int[] b, boolean histogram) {
+        int max = a.length + b.length + 1;
+        //the tables of the histogram heuristic have a slot per line number
+        int values = 0;
+        for (int[] lines : histogram ? new int[][]{a, b} : new int[0][]) {
+            for (int line : lines) {
+                values = Math.max(values, line + 1);
+            }
+        }
+        Search search = new Search(a, b, new int[2 * max + 2], new int[2 * max + 2], values);
+        //regions to diff {aLo, aHi, bLo, bHi} and blocks found {-1, aStart, bStart, length},
+        //taken from the top so the blocks come out in order
+        ArrayDeque<int[]> work = new ArrayDeque<>();
+        work.push(new int[]{0, a.length, 0, b.length});
+        List<int[]> blocks = new ArrayList<>();
+        while (!work.isEmpty()) {
+            int[] item = work.pop();
+            if (item[0] < 0) {
+                add(blocks, item[1], item[2], item[3]);
+            } else {
+                search.diff(item[0], item[1], item[2], item[3], blocks, work);
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * The lines compared and the space reused by every region.
+     */
+    private static final class Search {
+        private final int[] a;
+        private final int[] b;
+        /** the furthest x on each diagonal, searching forward and backward */
+        private final int[] forward;
+        private final int[] backward;
+        /** per line number: its count in the region of A, and its first line there;
+         *  empty without the histogram heuristic */
+        private final int[] count;
+        private final int[] first;
+        /** per line of A: the next line of the region with the same number */
+        private final int[] next;
+
+        Search(int[] a, int[] b, int[] forward, int[] backward, int values) {
+            this.a = a;
+            this.b = b;
+            this.forward = forward;
+            this.backward = backward;
+            this.count = new int[values];
+            this.first = new int[values];
+            this.next = new int[values == 0 ? 0 : a.length];
+            Arrays.fill(first, -1);
+        }
+
+        /**
+         * match the lines equal at both ends of A[aLo, aHi) and B[bLo, bHi)
+         * and push what is left around an anchor on WORK
+         */
+        void diff(int aLo, int aHi, int bLo, int bHi, List<int[]> blocks, ArrayDeque<int[]> work) {
+            int prefix = 0;
+            while (aLo + prefix < aHi && bLo + prefix < bHi && a[aLo + prefix] == b[bLo + prefix]) {
+                prefix += 1;
+            }
+            add(blocks, aLo, bLo, prefix);
+            aLo += prefix;
+            bLo += prefix;
+            int suffix = 0;
+            while (aLo < aHi - suffix && bLo < bHi - suffix
+                    && a[aHi - suffix - 1] == b[bHi - suffix - 1]) {
+                suffix += 1;
+            }
+            aHi -= suffix;
+            bHi -= suffix;
+            work.push(new int[]{-1, aHi, bHi, suffix});
+            if (aLo == aHi || bLo == bHi) {
+                return;
+            }
+            int[] anchor = count.length == 0 ? null : histogramAnchor(aLo, aHi, bLo, bHi);
+            if (anchor == null) {
+                anchor = middleSnake(aLo, aHi, bLo, bHi);
+            }
+            work.push(new int[]{anchor[2], aHi, anchor[3], bHi});
+            work.push(new int[]{-1, anchor[0], anchor[1], anchor[2] - anchor[0]});
+            work.push(new int[]{aLo, anchor[0], bLo, anchor[1]});
+        }
+
+        /**
+         * the histogram heuristic: the longest run {x, y, u, v} of equal lines
+         * among those containing the rarest line of A[aLo, aHi) that B[bLo, bHi)
+         * has too. matching rare lines first keeps the blocks of unique lines,
+         * like function headers, together. null if every common line occurs
+         * more than MAX_CHAIN times
+         */
+        private int[] histogramAnchor(int aLo, int aHi, int bLo, int bHi) {
+            for (int i = aHi - 1; i >= aLo; i--) {
+                next[i] = first[a[i]];
+                first[a[i]] = i;
+                count[a[i]] += 1;
+            }
+            int[] best = null;
+            int bestCount = MAX_CHAIN + 1;
+            int y = bLo;
+            while (y < bHi) {
+                int line = b[y];
+                int nextY = y + 1;
+                if (count[line] > 0 && count[line] <= bestCount) {
+                    for (int x = first[line]; x >= 0; x = next[x]) {
+                        int x0 = x;
+                        int y0 = y;
+                        int rarest = count[line];
+                        while (x0 > aLo && y0 > bLo && a[x0 - 1] == b[y0 - 1]) {
+                            x0 -= 1;
+                            y0 -= 1;
+                            rarest = Math.min(rarest, count[a[x0]]);
+                        }
+                        int x1 = x + 1;
+                        int y1 = y + 1;
+                        while (x1 < aHi && y1 < bHi && a[x1] == b[y1]) {
+                            rarest = Math.min(rarest, count[a[x1]]);
+                            x1 += 1;
+                            y1 += 1;
+                        }
+                        if (rarest < bestCount || best != null && rarest == bestCount
+                                && better(x0, x1, best, aLo + aHi)) {
+                            best = new int[]{x0, y0, x1, y1};
+                            bestCount = rarest;
+                        }
+                        nextY = Math.max(nextY, y1);
+                    }
+                }
+                y = nextY;
+            }
+            for (int i = aLo; i < aHi; i++) {
+                first[a[i]] = -1;
+                count[a[i]] = 0;
+            }
+            return best;
+        }
+
+        /**
+         * whether the run of lines X0 to X1 of A is longer than the run of
+         * BEST, or as long and closer to the middle of A (TWICEMIDDLE / 2),
+         * which splits the rest evenly
+         */
+        private static boolean better(int x0, int x1, int[] best, int twiceMiddle) {
+            if (x1 - x0 != best[2] - best[0]) {
+                return x1 - x0 > best[2] - best[0];
+            }
+            return Math.abs(x0 + x1 - twiceMiddle) < Math.abs(best[0] + best[2] - twiceMiddle);
+        }
+
+        /**
+         * the middle snake {x, y, u, v} of a shortest edit script between
+         * A[aLo, aHi) and B[bLo, bHi): lines x to u of A match lines y to v of B
+         */
+        private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+            int n = aHi - aLo;
+            int m = bHi - bLo;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int offset = (n + m + 1) / 2 + 1;
+            forward[offset + 1] = 0;
+            backward[offset + 1] = 0;
+            for (int d = 0; d <= (n + m + 1) / 2; d++) {
+                for (int k = -d; k <= d; k += 2) {
+                    int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                            ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                    int y = x - k;
+                    int x0 = x;
+                    int y0 = y;
+                    while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    forward[offset + k] = x;
+                    int kb = delta - k;
+                    if (odd && kb >= -(d - 1) && kb <= d - 1 && x + backward[offset + kb] >= n) {
+                        return new int[]{aLo + x0, bLo + y0, aLo + x, bLo + y};
+                    }
+                }
+                for (int k = -d; k <= d; k += 2) {
+                    int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                            ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                    int y = x - k;
+                    int x0 = x;
+                    int y0 = y;
+                    while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    backward[offset + k] = x;
+                    int kf = delta - k;
+                    if (!odd && kf >= -d && kf <= d && x + forward[offset + kf] >= n) {
+                        return new int[]{aHi - x, bHi - y, aHi - x0, bHi - y0};
+                    }
+                }
+            }
+            throw new IllegalStateException("no middle snake");
+        }
+    }
+
+    private static void add(List<int[]> blocks, int aStart, int bStart, int length) {
+        if (length == 0) {
+            return;
+        }
+        int[] last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        if (last != null && last[0] + last[2] == aStart && last[1] + last[2] == bStart) {
+            last[2] += length;
+            return;
+        }
+        blocks.add(new int[]{aStart, bStart, length});
+    }
+
+    /**
+     * A line as a key of a hash table, compared by its bytes.
+     */
+    private static final class Key {
+        private final byte[] bytes;
+        private final int start;
+        private final int length;
+        private final int hash;
+
+        Key(byte[] bytes, int start, int length) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = length;
+            int h = 1;
+            for (int i = start; i < start + length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Arrays.equals(bytes, start, start + length,
+                    other.bytes, other.start, other.start + other.length);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Three-way merge of blobs by lines (diff3).
+ * The current and the other version are each diffed against the base.
+ * Lines of the base matched in both diffs are stable; between two stable
+ * regions, a side that left the base unchanged takes the other side's
+ * lines, equal changes are taken once, and different changes conflict.
+ * Only the lines of a conflicting region go between the markers:
+ * <<<<<<< HEAD, current lines, =======, other lines, >>>>>>>
+ *
+ * @author winter
+ */
+class LineMerge {
+    private static final byte[] HEAD_MARKER = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = "=======\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTHER_MARKER = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The merged content of a blob, and whether it has conflicts.
+     */
+    static final class Result {
+        final byte[] content;
+        final boolean conflict;
+
+        private Result(byte[] content, boolean conflict) {
+            this.content = content;
+            this.conflict = conflict;
+        }
+    }
+
+    /**
+     * merge the changes from BASE to CUR and from BASE to OTHER.
+     * an absent blob is empty
+     */
+    static Result merge(byte[] base, byte[] cur, byte[] other) {
+        LineDiff.Lines o = LineDiff.split(base);
+        LineDiff.Lines a = LineDiff.split(cur);
+        LineDiff.Lines b = LineDiff.split(other);
+        int[][] numbers = LineDiff.number(o, a, b);
+        List<int[]> stable = stableRegions(LineDiff.matches(numbers[0], numbers[1]),
+                LineDiff.matches(numbers[0], numbers[2]));
+        stable.add(new int[]{o.size(), a.size(), b.size(), 0});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                Math.max(cur.length, other.length) + 64);
+        boolean conflict = false;
+        int io = 0;
+        int ia = 0;
+        int ib = 0;
+        for (int[] region : stable) {
+            boolean sameSides = Arrays.equals(numbers[1], ia, region[1], numbers[2], ib, region[2]);
+            if (sameSides) {
+                write(out, a, ia, region[1]);
+            } else if (Arrays.equals(numbers[1], ia, region[1], numbers[0], io, region[0])) {
+                write(out, b, ib, region[2]);
+            } else if (Arrays.equals(numbers[2], ib, region[2], numbers[0], io, region[0])) {
+                write(out, a, ia, region[1]);
+            } else {
+                conflict = true;
+                out.writeBytes(HEAD_MARKER);
+                write(out, a, ia, region[1]);
+                out.writeBytes(SEPARATOR);
+                write(out, b, ib, region[2]);
+                out.writeBytes(OTHER_MARKER);
+            }
+            write(out, a, region[1], region[1] + region[3]);
+            io = region[0] + region[3];
+            ia = region[1] + region[3];
+            ib = region[2] + region[3];
+        }
+        return new Result(out.toByteArray(), conflict);
+    }
+
+    /**
+     * the regions {start in base, start in cur, start in other, length} of
+     * base lines matched both in TOCUR and in TOOTHER, in order
+     */
+    private static List<int[]> stableRegions(List<int[]> toCur, List<int[]> toOther) {
+        List<int[]> regions = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < toCur.size() && j < toOther.size()) {
+            int[] x = toCur.get(i);
+            int[] y = toOther.get(j);
+            int start = Math.max(x[0], y[0]);
+            int end = Math.min(x[0] + x[2], y[0] + y[2]);
+            if (start < end) {
+                regions.add(new int[]{start, x[1] + start - x[0], y[1] + start - y[0], end - start});
+            }
+            if (x[0] + x[2] < y[0] + y[2]) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * write the lines FROM to TO of TEXT to OUT
+     */
+    private static void write(ByteArrayOutputStream out, LineDiff.Lines text, int from, int to) {
+        out.write(text.bytes, text.starts[from], text.starts[to] - text.starts[from]);
+    }
+}
@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Hammers one repository with gitlet processes started from many threads:
+ * writers add and commit their own files while readers run log, global-log,
+ * find and status. Afterwards every file must be tracked by the head commit,
+ * nothing may be left staged, and log and global-log must agree.
+ * A command that crashes or prints something unexpected fails the test.
+ * usage: java gitlet.LockStressTest [writers] [commits per writer] [readers]
+ *
+ * @author winter
+ */
+public class LockStressTest {
+    private static final Queue<String> FAILURES = new ConcurrentLinkedQueue<>();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        File dir = Files.createTempDirectory("gitlet-lock").toFile();
+        try {
+            run(dir, "init");
+            AtomicBoolean done = new AtomicBoolean();
+            List<Thread> writing = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                writing.add(new Thread(() -> write(dir, writer, rounds)));
+            }
+            List<Thread> reading = new ArrayList<>();
+            for (int r = 0; r < readers; r++) {
+                reading.add(new Thread(() -> read(dir, done)));
+            }
+            long start = System.nanoTime();
+            writing.forEach(Thread::start);
+            reading.forEach(Thread::start);
+            for (Thread t : writing) {
+                t.join();
+            }
+            done.set(true);
+            for (Thread t : reading) {
+                t.join();
+            }
+            long millis = (System.nanoTime() - start) / 1000000;
+            check(dir, writers * rounds);
+            System.out.printf("%d writers x %d commits, %d readers: %d ms%n",
+                    writers, rounds, readers, millis);
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (!FAILURES.isEmpty()) {
+            FAILURES.forEach(System.out::println);
+            System.out.println(FAILURES.size() + " failures");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * commit ROUNDS new files as WRITER. another writer may commit a file
+     * first, which leaves nothing to commit
+     */
+    private static void write(File dir, int writer, int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            String name = "w" + writer + "-" + i + ".txt";
+            try {
+                Files.write(new File(dir, name).toPath(),
+                        ("writer " + writer + " round " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            expect(run(dir, "add", name), "", "add " + name);
+            String output = run(dir, "commit", name);
+            if (!output.isEmpty() && !output.equals("No changes added to the commit.")) {
+                FAILURES.add("commit " + name + ": " + output);
+            }
+        }
+    }
+
+    private static void read(File dir, AtomicBoolean done) {
+        String[][] commands = {{"log"}, {"global-log"}, {"status"}, {"find", "initial commit"}};
+        for (int i = 0; !done.get(); i++) {
+            String[] command = commands[i % commands.length];
+            String output = run(dir, command);
+            if (output.isEmpty() || output.contains("Exception")) {
+                FAILURES.add(String.join(" ", command) + ": " + output);
+            }
+        }
+    }
+
+    /**
+     * check the repository in DIR after FILES files were committed
+     */
+    private static void check(File dir, int files) {
+        String status = run(dir, "status");
+        String staged = status.substring(status.indexOf("=== Staged Files ==="),
+                status.indexOf("=== Removed Files ==="));
+        if (!staged.trim().equals("=== Staged Files ===")) {
+            FAILURES.add("left staged: " + staged);
+        }
+        String untracked = status.substring(status.indexOf("=== Untracked Files ==="));
+        if (!untracked.trim().equals("=== Untracked Files ===")) {
+            FAILURES.add("not committed: " + untracked);
+        }
+        int logged = count(run(dir, "log"));
+        int global = count(run(dir, "global-log"));
+        if (logged != global || logged > files + 1) {
+            FAILURES.add("log has " + logged + " commits, global-log " + global);
+        }
+        String[] temps = new File(dir, ".gitlet").list((d, name) -> name.endsWith(".tmp"));
+        if (temps != null && temps.length > 0) {
+            FAILURES.add("temporary files left behind: " + String.join(", ", temps));
+        }
+    }
+
+    private static int count(String log) {
+        return log.split("===\ncommit ", -1).length - 1;
+    }
+
+    private static void expect(String output, String expected, String command) {
+        if (!output.equals(expected)) {
+            FAILURES.add(command + ": " + output);
+        }
+    }
+
+    /**
+     * run gitlet with ARGS in DIR and return what it printed
+     */
+    private static String run(File dir, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("gitlet.Main");
+        command.addAll(List.of(args));
+        try {
+            Process process = new ProcessBuilder(command).directory(dir)
+                    .redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(),
+                    StandardCharsets.UTF_8);
+            if (process.waitFor() != 0) {
+                FAILURES.add("gitlet " + String.join(" ", args) + " exited with "
+                        + process.exitValue() + ": " + output);
+            }
+            return output;
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
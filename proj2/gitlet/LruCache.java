@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * A least-recently-used cache bounded by the total size of its values.
+ * Objects in gitlet are immutable and named by their sha1Code, so a cached
+ * object never goes stale during a command. Values larger than a quarter
+ * of the capacity are not cached, so one huge blob cannot evict everything else.
+ * Every cache counts its hits and misses; "gitlet --stats" prints them.
+ * The caches outlive a command in gitlet serve, so the counters are reset
+ * at the start of every command there.
+ *
+ * @author winter
+ */
+class LruCache<K, V> {
+    /**
+     * every cache created, in order of creation
+     */
+    private static final List<LruCache<?, ?>> CACHES = new ArrayList<>();
+
+    private final String name;
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+
+    /**
+     * a cache called NAME holding values of total weight at most CAPACITY,
+     * where WEIGHER gives the weight of a value (roughly its size in bytes)
+     */
+    LruCache(String name, long capacity, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.capacity = capacity;
+        this.weigher = weigher;
+        synchronized (CACHES) {
+            CACHES.add(this);
+        }
+    }
+
+    /**
+     * the value cached for KEY, or null, counting a hit or a miss
+     */
+    synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return value;
+    }
+
+    synchronized void put(K key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > capacity / 4) {
+            return;
+        }
+        V old = entries.put(key, value);
+        if (old != null) {
+            size -= weigher.applyAsLong(old);
+        }
+        size += weight;
+        Iterator<V> oldest = entries.values().iterator();
+        while (size > capacity) {
+            size -= weigher.applyAsLong(oldest.next());
+            oldest.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * empty every cache, e.g. after gc deleted objects
+     */
+    static void clearAll() {
+        synchronized (CACHES) {
+            for (LruCache<?, ?> cache : CACHES) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * start counting hits and misses from zero, keeping the cached values
+     */
+    static void resetStats() {
+        synchronized (CACHES) {
+            for (LruCache<?, ?> cache : CACHES) {
+                synchronized (cache) {
+                    cache.hits = 0;
+                    cache.misses = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * print the counters of every cache to OUT
+     */
+    static void printStats(PrintStream out) {
+        out.printf("%-8s %10s %10s %8s %10s %12s%n",
+                "cache", "hits", "misses", "hit rate", "entries", "bytes");
+        synchronized (CACHES) {
+            for (LruCache<?, ?> cache : CACHES) {
+                synchronized (cache) {
+                    long total = cache.hits + cache.misses;
+                    out.printf("%-8s %10d %10d %7.1f%% %10d %12d%n", cache.name, cache.hits,
+                            cache.misses, total == 0 ? 0.0 : 100.0 * cache.hits / total,
+                            cache.entries.size(), cache.size);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 codec in the style of LZ4, for blobs that are too large to
+ * be worth deflating.
+ *
+ * The stream is a sequence of blocks of at most BLOCK_SIZE raw bytes, each
+ * written as: raw length | compressed length | compressed bytes.
+ * A block whose compressed length is 0 is stored raw.
+ * Inside a block every sequence is a token (literal length in the high
+ * nibble, match length - 4 in the low one, 15 meaning "more length bytes
+ * follow"), the literals, then a 2-byte little-endian match offset.
+ * The last sequence of a block has literals only.
+ *
+ * @author winter
+ */
+class LzCodec extends BlobCodec {
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+    private static final int MAX_OFFSET = 65535;
+    /** the last bytes of a block are always written as literals */
+    private static final int LAST_LITERALS = 5;
+
+    LzCodec() {
+        super((byte) 2, "lz");
+    }
+
+    @Override
+    OutputStream encoder(OutputStream out) {
+        return new BlockOutputStream(out);
+    }
+
+    @Override
+    InputStream decoder(InputStream in) {
+        return new BlockInputStream(in);
+    }
+
+    /**
+     * compress SRC[0 .. LENGTH) into DST, returning the compressed length.
+     * DST must hold at least maxCompressedLength(LENGTH) bytes.
+     */
+    static int compress(byte[] src, int length, byte[] dst) {
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int out = 0;
+        int limit = length - LAST_LITERALS;
+        int i = 0;
+        while (i < limit) {
+            int seq = readInt(src, i);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                i += 1;
+                continue;
+            }
+            int len = MIN_MATCH;
+            while (i + len < limit && src[ref + len] == src[i + len]) {
+                len += 1;
+            }
+            int token = out;
+            out = writeSequence(src, anchor, i - anchor, dst, out);
+            dst[out++] = (byte) (i - ref);
+            dst[out++] = (byte) ((i - ref) >>> 8);
+            int extra = len - MIN_MATCH;
+            dst[token] |= (byte) Math.min(extra, 15);
+            if (extra >= 15) {
+                out = writeLength(extra - 15, dst, out);
+            }
+            i += len;
+            anchor = i;
+        }
+        return writeSequence(src, anchor, length - anchor, dst, out);
+    }
+
+    /**
+     * decompress SRC[0 .. LENGTH) into DST, returning the number of raw bytes
+     */
+    static int decompress(byte[] src, int length, byte[] dst) {
+        int in = 0;
+        int out = 0;
+        while (in < length) {
+            int token = src[in++] & 0xff;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    b = src[in++] & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, in, dst, out, literals);
+            in += literals;
+            out += literals;
+            if (in >= length) {
+                break;
+            }
+            int offset = (src[in] & 0xff) | ((src[in + 1] & 0xff) << 8);
+            in += 2;
+            int len = token & 0xf;
+            if (len == 15) {
+                int b;
+                do {
+                    b = src[in++] & 0xff;
+                    len += b;
+                } while (b == 255);
+            }
+            len += MIN_MATCH;
+            if (offset >= len) {
+                System.arraycopy(dst, out - offset, dst, out, len);
+                out += len;
+            } else {
+                for (int k = 0; k < len; k++) {
+                    dst[out] = dst[out - offset];
+                    out += 1;
+                }
+            }
+        }
+        return out;
+    }
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * write a token with the literal length LEN followed by SRC[START .. START + LEN)
+     */
+    private static int writeSequence(byte[] src, int start, int len, byte[] dst, int out) {
+        dst[out++] = (byte) (Math.min(len, 15) << 4);
+        if (len >= 15) {
+            out = writeLength(len - 15, dst, out);
+        }
+        System.arraycopy(src, start, dst, out, len);
+        return out + len;
+    }
+
+    private static int writeLength(int len, byte[] dst, int out) {
+        while (len >= 255) {
+            dst[out++] = (byte) 255;
+            len -= 255;
+        }
+        dst[out++] = (byte) len;
+        return out;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8
+                | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Cuts the raw stream into blocks and compresses each of them.
+     */
+    private static class BlockOutputStream extends FilterOutputStream {
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+        private final DataOutputStream data;
+        private int count;
+
+        BlockOutputStream(OutputStream out) {
+            super(out);
+            data = new DataOutputStream(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            block[count++] = (byte) b;
+            if (count == BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, BLOCK_SIZE - count);
+                System.arraycopy(b, off, block, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == BLOCK_SIZE) {
+                    flushBlock();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushBlock();
+            data.flush();
+            super.close();
+        }
+
+        private void flushBlock() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            int n = compress(block, count, compressed);
+            data.writeInt(count);
+            if (n >= count) {
+                data.writeInt(0);
+                data.write(block, 0, count);
+            } else {
+                data.writeInt(n);
+                data.write(compressed, 0, n);
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * Reads blocks back one at a time.
+     */
+    private static class BlockInputStream extends InputStream {
+        private final DataInputStream data;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+        private int pos;
+        private int count;
+
+        BlockInputStream(InputStream in) {
+            data = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, count - pos);
+            System.arraycopy(block, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+
+        private boolean fill() throws IOException {
+            if (pos < count) {
+                return true;
+            }
+            int raw;
+            try {
+                raw = data.readInt();
+            } catch (EOFException excp) {
+                return false;
+            }
+            int n = data.readInt();
+            if (n == 0) {
+                data.readFully(block, 0, raw);
+            } else {
+                data.readFully(compressed, 0, n);
+                if (decompress(compressed, n, block) != raw) {
+                    throw new IOException("corrupted lz block");
+                }
+            }
+            pos = 0;
+            count = raw;
+            return true;
+        }
+    }
+}
@@ -1,24 +1,113 @@
 package gitlet;
 
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static gitlet.Utils.*;
+
 /**
  * Driver class for Gitlet, a subset of the Git version-control system.
+ * usage: java gitlet.Main [--stats] [--profile[=json]] command [operands]
+ * --stats prints the hits and misses of the object caches to stderr.
+ * --profile prints the counts, bytes and time of the operations of the
+ * command to stderr, as a table or as JSON, see Profile.
+ * Every command in a repository runs under the RepoLock.
+ * gitlet serve keeps running and takes commands from gitlet.Client, see Daemon.
  *
  * @author winter
  */
 public class Main {
     public static void main(String[] args) {
+        Options options = Options.parse(args);
+        args = options.command;
+        if (options.profile) {
+            Profile.enable(args.length > 0 ? args[0] : "", true);
+        }
+        if (options.stats || options.profile) {
+            //uncaught exceptions end the command too, so the counters are printed on shutdown
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> options.print(System.err)));
+        }
+        try {
+            if (args.length > 0 && args[0].equals("serve")) {
+                checkArguments(args, 1);
+                Daemon.serve();
+            } else {
+                run(args);
+            }
+        } catch (GitletException excp) {
+            System.out.print(excp.getMessage());
+        }
+    }
+
+    /**
+     * run the command ARGS. a GitletException carries the message of a
+     * failed command, which then has no effect on the repository
+     */
+    static void run(String[] args) {
+        long start = Profile.start();
+        try {
+            runCommand(args);
+        } finally {
+            Profile.record(Profile.COMMAND, start, 0);
+        }
+    }
+
+    private static void runCommand(String[] args) {
         if (args.length == 0) {
-            System.out.print("Please enter a command.");
-            System.exit(0);
+            throw error("Please enter a command.");
         }
+        String firstArg = args[0];
+        boolean locked = !firstArg.equals("init") && Repository.inGit();
+        boolean shared = RepoLock.isReadOnly(firstArg);
+        if (!locked) {
+            execute(args);
+            return;
+        }
+        long waited = Profile.start();
+        RepoLock.acquire(shared);
+        Profile.record(Profile.LOCK, waited, 0);
+        try {
+            if (shared && (Transaction.needsRecovery() || !ObjectCodec.isCurrent())) {
+                //recovery and migration write, so a reader has to do them exclusively
+                RepoLock.release(true);
+                shared = false;
+                waited = Profile.start();
+                RepoLock.acquire(false);
+                Profile.record(Profile.LOCK, waited, 0);
+            }
+            Transaction.recover();
+            ObjectCodec.migrate();
+            //another process may have changed the repository since the last command of gitlet serve
+            Index.refresh();
+            CommitIndex.reset();
+            CommitGraph.reset();
+            ObjectStore.refresh();
+            execute(args);
+        } finally {
+            RepoLock.release(shared);
+        }
+    }
+
+    private static void execute(String[] args) {
+        try {
+            dispatch(args);
+        } catch (GitletException excp) {
+            Transaction.abort();
+            throw excp;
+        }
+        Transaction.commit();
+        Index.save();
+    }
+
+    private static void dispatch(String[] args) {
         String firstArg = args[0];
         switch (firstArg) {
             case "init":
                 Repository.init();
                 break;
             case "add":
-                checkArguments(args, 2);
-                Repository.add(args[1]);
+                checkMinArguments(args, 2);
+                Repository.add(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit":
                 checkArguments(args, 2);
@@ -29,14 +118,19 @@ public class Main {
                 Repository.rm(args[1]);
                 break;
             case "log":
-                checkArguments(args, 1);
-                Repository.log();
+                checkMinArguments(args, 1);
+                Repository.log(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "global-log":
-                checkArguments(args, 1);
-                Repository.globalLog();
+                checkMinArguments(args, 1);
+                Repository.globalLog(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "find":
+                if (args.length == 3 && args[1].equals("--contains")) {
+                    checkArguments(args, 3);
+                    Repository.findContaining(args[2]);
+                    break;
+                }
                 checkArguments(args, 2);
                 Repository.find(args[1]);
                 break;
@@ -64,8 +158,24 @@ public class Main {
                 checkArguments(args, 2);
                 Repository.merge(args[1]);
                 break;
+            case "diff":
+                if (args.length > 3) {
+                    throw error("Incorrect operands.");
+                }
+                checkArguments(args, args.length);
+                Repository.diff(Arrays.copyOfRange(args, 1, args.length));
+                break;
+            case "gc":
+                if (args.length == 2 && args[1].equals("--report")) {
+                    checkArguments(args, 2);
+                    Repository.gc(true);
+                    break;
+                }
+                checkArguments(args, 1);
+                Repository.gc(false);
+                break;
             default:
-                System.out.print("No command with that name exists.");
+                throw error("No command with that name exists.");
         }
     }
 
@@ -75,19 +185,26 @@ public class Main {
     private static void checkArguments(String[] args, int required) {
         if (args.length != required) {
             if (args[0].equals("commit") && (args.length == 1)) {
-                System.out.print("Please enter a commit message.");
-                System.exit(0);
+                throw error("Please enter a commit message.");
             } else {
-                System.out.print("Incorrect operands.");
-                System.exit(0);
+                throw error("Incorrect operands.");
             }
         }
         if (!Repository.inGit()) {
-            System.out.print("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw error("Not in an initialized Gitlet directory.");
         }
     }
 
+    /**
+     * check that there are at least REQUIRED arguments
+     */
+    private static void checkMinArguments(String[] args, int required) {
+        if (args.length < required) {
+            throw error("Incorrect operands.");
+        }
+        checkArguments(args, args.length);
+    }
+
     /**
      * check arguments for the "checkout" command
      */
@@ -98,24 +215,63 @@ public class Main {
                 break;
             case 3:
                 if (!args[1].equals("--")) {
-                    System.out.print("Incorrect operands.");
-                    System.exit(0);
+                    throw error("Incorrect operands.");
                 }
                 break;
             case 4:
                 if (!args[2].equals("--")) {
-                    System.out.print("Incorrect operands.");
-                    System.exit(0);
+                    throw error("Incorrect operands.");
                 }
                 break;
             default:
-                System.out.print("Incorrect operands.");
-                System.exit(0);
-                break;
+                throw error("Incorrect operands.");
         }
         if (!Repository.inGit()) {
-            System.out.print("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw error("Not in an initialized Gitlet directory.");
+        }
+    }
+
+    /**
+     * The options before the command: --stats and --profile[=json].
+     */
+    static final class Options {
+        boolean stats;
+        boolean profile;
+        boolean json;
+        /** the command and its operands */
+        String[] command;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            int i = 0;
+            for (; i < args.length; i++) {
+                if (args[i].equals("--stats")) {
+                    options.stats = true;
+                } else if (args[i].equals("--profile")) {
+                    options.profile = true;
+                } else if (args[i].equals("--profile=json")) {
+                    options.profile = true;
+                    options.json = true;
+                } else {
+                    break;
+                }
+            }
+            options.command = Arrays.copyOfRange(args, i, args.length);
+            return options;
+        }
+
+        /**
+         * print the counters the options ask for to OUT
+         */
+        void print(PrintStream out) {
+            if (stats) {
+                LruCache.printStats(out);
+            }
+            if (profile && json) {
+                Profile.printJson(out);
+            } else if (profile) {
+                Profile.print(out);
+            }
         }
     }
 }
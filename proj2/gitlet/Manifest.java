@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * The stored form of a blob split into chunks by Chunker: the list of its
+ * chunks, each stored once as an object of its own and shared by every
+ * blob that contains it.
+ * encoding: blob header with codec id CODEC_ID and the raw length | count |
+ * per chunk: chunk id (20 raw bytes) | length
+ *
+ * @author winter
+ */
+class Manifest {
+    /** the codec id in the header of a stored blob that marks a manifest */
+    static final byte CODEC_ID = 3;
+
+    /** the raw length of the blob, the sum of the lengths of its chunks */
+    long size;
+    final List<String> chunks = new ArrayList<>();
+    final List<Integer> lengths = new ArrayList<>();
+
+    void add(String chunk, int length) {
+        chunks.add(chunk);
+        lengths.add(length);
+        size += length;
+    }
+
+    /**
+     * check if the stored blob STORED, or its first HEADER_SIZE bytes, is a manifest
+     */
+    static boolean isManifest(byte[] stored) {
+        return BlobCodec.hasHeader(stored) && stored[3] == CODEC_ID;
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BlobCodec.HEADER_SIZE
+                + 4 + 24 * chunks.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(BlobCodec.header(CODEC_ID, size));
+            out.writeInt(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                out.write(toRaw(chunks.get(i)));
+                out.writeInt(lengths.get(i));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    static Manifest decode(byte[] stored) {
+        ByteBuffer in = ByteBuffer.wrap(stored, BlobCodec.HEADER_SIZE,
+                stored.length - BlobCodec.HEADER_SIZE);
+        Manifest manifest = new Manifest();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            String chunk = toHex(stored, in.position());
+            in.position(in.position() + 20);
+            manifest.add(chunk, in.getInt());
+        }
+        return manifest;
+    }
+}
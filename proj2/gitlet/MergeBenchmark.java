@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Measures LineDiff and LineMerge on large files: a base of N lines, a
+ * current version and an other version that each change, insert and
+ * delete lines at random, either in different places (a clean merge) or
+ * in the same places (conflicts). The diff of the base and the current
+ * version is timed with Myers' algorithm alone and with the histogram
+ * heuristic.
+ * usage: java gitlet.MergeBenchmark [lines] [percent changed] [rounds]
+ *
+ * @author winter
+ */
+public class MergeBenchmark {
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        double percent = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int step = Math.max(2, (int) Math.round(100 / percent));
+
+        String[] base = new String[lines];
+        for (int i = 0; i < lines; i++) {
+            base[i] = "line " + i + " of the base version\n";
+        }
+        byte[] baseBytes = join(base);
+        System.out.printf("%d lines, %d bytes, one change every %d lines%n",
+                lines, baseBytes.length, step);
+        byte[] cur = edit(base, step, 0, "cur", 1);
+        System.out.printf("%-10s %10s %10s%n", "diff", "ms", "matched");
+        reportDiff("myers", baseBytes, cur, false, rounds);
+        reportDiff("histogram", baseBytes, cur, true, rounds);
+        System.out.printf("%-10s %10s %10s %10s%n", "merge", "ms", "bytes", "conflict");
+        report("disjoint", baseBytes, cur,
+                edit(base, step, step / 2, "other", 2), rounds);
+        report("same", baseBytes, cur,
+                edit(base, step, 0, "other", 2), rounds);
+    }
+
+    private static void reportDiff(String name, byte[] base, byte[] cur, boolean histogram,
+                                   int rounds) {
+        long best = Long.MAX_VALUE;
+        int matched = 0;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            int[][] numbers = LineDiff.number(LineDiff.split(base), LineDiff.split(cur));
+            matched = 0;
+            for (int[] block : LineDiff.matches(numbers[0], numbers[1], histogram)) {
+                matched += block[2];
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-10s %10.1f %10d%n", name, best / 1e6, matched);
+    }
+
+    private static void report(String name, byte[] base, byte[] cur, byte[] other, int rounds) {
+        long best = Long.MAX_VALUE;
+        LineMerge.Result result = null;
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            result = LineMerge.merge(base, cur, other);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-10s %10.1f %10d %10b%n", name, best / 1e6,
+                result.content.length, result.conflict);
+    }
+
+    /**
+     * BASE with every STEPth line from FIRST on changed, removed or
+     * followed by a new line, chosen at random with SEED
+     */
+    private static byte[] edit(String[] base, int step, int first, String side, long seed) {
+        Random random = new Random(seed);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < base.length; i++) {
+            if (i % step != first) {
+                result.append(base[i]);
+                continue;
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    result.append("line ").append(i).append(" changed by ").append(side).append('\n');
+                    break;
+                case 1:
+                    break;
+                default:
+                    result.append(base[i]).append("new line from ").append(side).append('\n');
+                    break;
+            }
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] join(String[] lines) {
+        return String.join("", lines).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -11,6 +11,15 @@ public class MergedCommit extends Commit {
         this.secondParent = secondParent.getSha1();
     }
 
+    /**
+     * a merged commit read back from the object store
+     */
+    MergedCommit(String message, String time, String parent, String secondParent,
+                 String tree) {
+        super(message, time, parent, tree);
+        this.secondParent = secondParent;
+    }
+
     public String getSecondParent() {
         return secondParent;
     }
@@ -30,8 +39,8 @@ public class MergedCommit extends Commit {
                 +
                 "SecondParentSha1: %s \n"
                 +
-                " TrackedFiles: %s", getMessage(), getTime(), "Winter", getParent(),
-                secondParent, trackedFiles);
+                " Tree: %s", getMessage(), getTime(), "Winter", getParent(),
+                secondParent, getTree());
         return info;
     }
 
@@ -53,7 +62,7 @@ public class MergedCommit extends Commit {
                 &&
                 getMessage().equals(other.getMessage())
                 &&
-                this.trackedFiles.equals(other.trackedFiles);
+                getTree().equals(other.getTree());
     }
 
 }
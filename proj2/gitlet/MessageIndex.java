@@ -0,0 +1,245 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/**
+ * An index of commit messages: CWD/.gitlet/message-index
+ * "GMIX" | version | records of (commit id, 20 raw bytes | length | message in UTF-8)
+ *
+ * Commit.commit appends one record, so the file is never rewritten. Loaded,
+ * it is a hash table from each message to its commits, so find is a lookup
+ * instead of decoding every commit, plus a table from each word to the
+ * commits using it for find --contains. Words are the lowercase runs of
+ * letters and digits. The index is rebuilt when it does not have one record
+ * per commit, e.g. after commits by an older gitlet or a crash between
+ * writing a commit and its record.
+ *
+ * @author winter
+ */
+class MessageIndex {
+    /**
+     * The file for the message index: CWD/.gitlet/message-index
+     */
+    static final File INDEX = join(Repository.GITLET_DIR, "message-index");
+
+    private static final int MAGIC = 0x474d4958;
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+
+    /** commit ids and messages in the order of the file, loaded on first use */
+    private static List<String> ids;
+    private static List<String> messages;
+    private static Map<String, List<Integer>> byMessage;
+    /** the positions of the commits using each word, built on first use */
+    private static Map<String, List<Integer>> byWord;
+    /** the length of the file read so far, so a later command reads only new records */
+    private static long loaded;
+
+    /**
+     * append the record of COMMIT, unless the index has not been built yet
+     */
+    static synchronized void add(Commit commit) {
+        if (!INDEX.exists()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(INDEX, "rw")) {
+            file.seek(file.length());
+            file.write(record(commit.getSha1(), commit.getMessage()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * the ids of the commits with the message MESSAGE, sorted
+     */
+    static synchronized List<String> find(String message) {
+        load();
+        List<Integer> positions = byMessage.getOrDefault(message, Collections.emptyList());
+        return sortedIds(positions);
+    }
+
+    /**
+     * the ids of the commits whose message contains TEXT, sorted.
+     * the words of TEXT narrow down the candidates, except that the first
+     * word may be the end of a longer word and the last the start of one
+     */
+    static synchronized List<String> findContaining(String text) {
+        load();
+        if (byWord == null) {
+            byWord = new HashMap<>();
+            for (int pos = 0; pos < messages.size(); pos++) {
+                addWords(pos);
+            }
+        }
+        List<String> words = words(text);
+        Set<Integer> candidates = null;
+        for (int i = 0; i < words.size(); i++) {
+            Set<Integer> matches = new HashSet<>();
+            String word = words.get(i);
+            boolean first = i == 0;
+            boolean last = i == words.size() - 1;
+            if (!first && !last) {
+                matches.addAll(byWord.getOrDefault(word, Collections.emptyList()));
+            } else {
+                for (Map.Entry<String, List<Integer>> entry : byWord.entrySet()) {
+                    String key = entry.getKey();
+                    if (first && last ? key.contains(word)
+                            : first ? key.endsWith(word) : key.startsWith(word)) {
+                        matches.addAll(entry.getValue());
+                    }
+                }
+            }
+            if (candidates == null) {
+                candidates = matches;
+            } else {
+                candidates.retainAll(matches);
+            }
+        }
+        List<Integer> result = new ArrayList<>();
+        if (candidates == null) {
+            //no letters or digits to look up
+            for (int i = 0; i < messages.size(); i++) {
+                result.add(i);
+            }
+        } else {
+            result.addAll(candidates);
+        }
+        result.removeIf(pos -> !messages.get(pos).contains(text));
+        return sortedIds(result);
+    }
+
+    /**
+     * rebuild the index from all commits
+     */
+    static synchronized void rebuild() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).array());
+        for (String id : CommitIndex.ids()) {
+            bytes.writeBytes(record(id, Commit.getCommit(id).getMessage()));
+        }
+        writeContentsAtomically(INDEX, bytes.toByteArray());
+        ids = null;
+    }
+
+    /**
+     * read the records added since the last load, rebuilding the index if
+     * it is missing or does not match the commits
+     */
+    private static void load() {
+        long length = INDEX.length();
+        if (ids == null || length < loaded) {
+            ids = new ArrayList<>();
+            messages = new ArrayList<>();
+            byMessage = new HashMap<>();
+            byWord = null;
+            loaded = 0;
+        }
+        if (length > loaded) {
+            read(length);
+        }
+        if (ids.size() != CommitIndex.size()) {
+            rebuild();
+            load();
+        }
+    }
+
+    private static void read(long length) {
+        ByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(INDEX, "r")) {
+            byte[] content = new byte[(int) (length - loaded)];
+            file.seek(loaded);
+            file.readFully(content);
+            buffer = ByteBuffer.wrap(content);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (loaded == 0) {
+            if (buffer.remaining() < HEADER
+                    || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                //a broken index is rebuilt by the count check
+                loaded = length;
+                ids.clear();
+                return;
+            }
+        }
+        byte[] raw = new byte[20];
+        while (buffer.remaining() >= 24) {
+            int start = buffer.position();
+            buffer.get(raw);
+            int size = buffer.getInt();
+            if (size < 0 || buffer.remaining() < size) {
+                //a record still being appended
+                buffer.position(start);
+                break;
+            }
+            String message = new String(buffer.array(), buffer.position(), size,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + size);
+            int pos = ids.size();
+            ids.add(toHex(raw, 0));
+            messages.add(message);
+            byMessage.computeIfAbsent(message, k -> new ArrayList<>()).add(pos);
+            if (byWord != null) {
+                addWords(pos);
+            }
+        }
+        loaded += buffer.position();
+    }
+
+    private static void addWords(int pos) {
+        for (String word : new HashSet<>(words(messages.get(pos)))) {
+            byWord.computeIfAbsent(word, k -> new ArrayList<>()).add(pos);
+        }
+    }
+
+    /**
+     * the lowercase runs of letters and digits in TEXT
+     */
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static List<String> sortedIds(Iterable<Integer> positions) {
+        Set<String> result = new TreeSet<>();
+        for (int pos : positions) {
+            result.add(ids.get(pos));
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static byte[] record(String id, String message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            out.write(toRaw(id));
+            out.writeInt(text.length);
+            out.write(text);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+}
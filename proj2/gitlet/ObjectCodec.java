@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/**
+ * The binary encoding of commits and staging areas.
+ * commit: "GCM" | version | flags | message | time | parent | second parent | tree
+ *     flags: bit 0 - the commit has a parent, bit 1 - it is a merged commit;
+ *     each parent is only present when its flag is set
+ * staging area: "GST" | version | count | entries (name, sha1Code)
+ * strings are a varint byte length followed by UTF-8, counts are varints,
+ * and sha1Codes are 20 raw bytes.
+ *
+ * Gitlets before this format stored both with Java serialization; those
+ * objects are still read (see LegacyFormat) and rewritten once by migrate.
+ * FORMAT records the version of the repository format: 1 has these
+ * encodings, 2 also guarantees that every blob starting with "GLB" has a
+ * blob header (see BlobCodec).
+ *
+ * @author winter
+ */
+class ObjectCodec {
+    /**
+     * The file recording the format of the repository: CWD/.gitlet/format
+     */
+    static final File FORMAT = join(Repository.GITLET_DIR, "format");
+
+    static final int VERSION = 1;
+    /** the version of the repository format written to FORMAT */
+    static final int FORMAT_VERSION = 2;
+
+    private static final int HAS_PARENT = 1;
+    private static final int MERGED = 2;
+
+    static byte[] encode(Commit commit) {
+        long start = Profile.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        writeMagic(out, 'C', 'M');
+        int flags = commit.getParent() == null ? 0 : HAS_PARENT;
+        if (commit instanceof MergedCommit) {
+            flags |= MERGED;
+        }
+        out.write(flags);
+        writeString(out, commit.getMessage());
+        writeString(out, commit.getTime());
+        if (commit.getParent() != null) {
+            out.write(toRaw(commit.getParent()), 0, 20);
+        }
+        if (commit instanceof MergedCommit) {
+            out.write(toRaw(((MergedCommit) commit).getSecondParent()), 0, 20);
+        }
+        out.write(toRaw(commit.getTree()), 0, 20);
+        Profile.record(Profile.ENCODE, start, out.size());
+        return out.toByteArray();
+    }
+
+    static Commit decodeCommit(byte[] bytes) {
+        long start = Profile.start();
+        Commit commit;
+        if (LegacyFormat.isLegacy(bytes)) {
+            commit = LegacyFormat.readCommit(bytes);
+        } else {
+            int[] pos = {checkMagic(bytes, 'C', 'M')};
+            int flags = bytes[pos[0]++];
+            String message = readString(bytes, pos);
+            String time = readString(bytes, pos);
+            String parent = (flags & HAS_PARENT) != 0 ? readId(bytes, pos) : null;
+            if ((flags & MERGED) != 0) {
+                String secondParent = readId(bytes, pos);
+                commit = new MergedCommit(message, time, parent, secondParent, readId(bytes, pos));
+            } else {
+                commit = new Commit(message, time, parent, readId(bytes, pos));
+            }
+        }
+        Profile.record(Profile.DECODE, start, bytes.length);
+        return commit;
+    }
+
+    static byte[] encode(FileTracker tracker) {
+        long start = Profile.start();
+        Map<String, String> files = tracker.trackedFiles;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(files.size() * 48 + 8);
+        writeMagic(out, 'S', 'T');
+        Delta.writeVarint(out, files.size());
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            writeString(out, file.getKey());
+            out.write(toRaw(file.getValue()), 0, 20);
+        }
+        Profile.record(Profile.ENCODE, start, out.size());
+        return out.toByteArray();
+    }
+
+    static FileTracker decodeTracker(byte[] bytes) {
+        if (LegacyFormat.isLegacy(bytes)) {
+            return LegacyFormat.readTracker(bytes);
+        }
+        long start = Profile.start();
+        int[] pos = {checkMagic(bytes, 'S', 'T')};
+        int count = (int) Delta.readVarint(bytes, pos);
+        Map<String, String> files = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            String name = readString(bytes, pos);
+            files.put(name, readId(bytes, pos));
+        }
+        Profile.record(Profile.DECODE, start, bytes.length);
+        return new FileTracker(files);
+    }
+
+    /**
+     * check if the repository is in the current format
+     */
+    static boolean isCurrent() {
+        if (!FORMAT.exists()) {
+            return false;
+        }
+        try {
+            return Integer.parseInt(readContentsAsString(FORMAT).trim()) >= FORMAT_VERSION;
+        } catch (NumberFormatException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * rewrite every commit and staging area stored with Java serialization
+     * in the current format, and give a header to the old blobs that need
+     * one. runs once per repository: FORMAT is written at the end, so an
+     * interrupted migration simply runs again
+     */
+    static void migrate() {
+        if (isCurrent()) {
+            return;
+        }
+        for (String id : ObjectStore.ids(ObjectStore.COMMIT)) {
+            byte[] commit = ObjectStore.read(ObjectStore.COMMIT, id);
+            if (LegacyFormat.isLegacy(commit)) {
+                ObjectStore.write(ObjectStore.COMMIT, id, encode(decodeCommit(commit)));
+            }
+        }
+        for (File stage : new File[]{Repository.ADDITION, Repository.REMOVAL}) {
+            if (stage.exists() && LegacyFormat.isLegacy(readContents(stage))) {
+                FileTracker.read(stage).write(stage);
+            }
+        }
+        ObjectStore.migrateBlobs();
+        writeContents(FORMAT, String.valueOf(FORMAT_VERSION));
+    }
+
+    private static void writeMagic(ByteArrayOutputStream out, char b1, char b2) {
+        out.write('G');
+        out.write(b1);
+        out.write(b2);
+        out.write(VERSION);
+    }
+
+    /**
+     * check the magic and version at the start of BYTES, returning the
+     * position after them
+     */
+    private static int checkMagic(byte[] bytes, char b1, char b2) {
+        if (bytes.length < 4 || bytes[0] != 'G' || bytes[1] != b1 || bytes[2] != b2) {
+            throw new IllegalArgumentException("not a gitlet object");
+        }
+        if (bytes[3] != VERSION) {
+            throw new IllegalArgumentException("unsupported object version " + bytes[3]);
+        }
+        return 4;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        Delta.writeVarint(out, utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    private static String readString(byte[] bytes, int[] pos) {
+        int length = (int) Delta.readVarint(bytes, pos);
+        String s = new String(bytes, pos[0], length, StandardCharsets.UTF_8);
+        pos[0] += length;
+        return s;
+    }
+
+    private static String readId(byte[] bytes, int[] pos) {
+        String id = toHex(bytes, pos[0]);
+        pos[0] += 20;
+        return id;
+    }
+}
@@ -0,0 +1,870 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/**
+ * The object database of a gitlet repository.
+ * New objects are written loose, one file each (blobs in BLOBS/xx/yyyy,
+ * trees in TREES/xx/yyyy, commits in COMMITS), and "gitlet gc" moves them
+ * into a pack in PACKS.
+ * A blob of at least CHUNK_THRESHOLD bytes is split by Chunker and stored
+ * as a Manifest; its chunks are objects of their own (CHUNKS/xx/yyyy),
+ * so versions of a large file share every chunk an edit did not touch.
+ * Every read of an object goes through this class, so callers
+ * never need to know where an object currently lives.
+ *
+ * @author winter
+ */
+class ObjectStore {
+    /**
+     * The directory for all packs: CWD/.gitlet/packs
+     */
+    static final File PACKS = join(Repository.GITLET_DIR, "packs");
+
+    /**
+     * The directory for all loose trees: CWD/.gitlet/trees
+     */
+    static final File TREES = join(Repository.GITLET_DIR, "trees");
+
+    /**
+     * The directory for all loose chunks of large blobs: CWD/.gitlet/chunks
+     */
+    static final File CHUNKS = join(Repository.GITLET_DIR, "chunks");
+
+    static final byte BLOB = 1;
+    static final byte COMMIT = 2;
+    /** a packed blob stored as a delta: base id (20 raw bytes) | encoded delta */
+    static final byte DELTA = 3;
+    static final byte TREE = 4;
+    static final byte CHUNK = 5;
+    /** a packed blob stored as a Manifest of chunks */
+    static final byte MANIFEST = 6;
+
+    /** blobs at least this large are stored as chunks */
+    static final long CHUNK_THRESHOLD = Long.getLong("gitlet.chunk.threshold", 1 << 20);
+    /** hashed before the content of a chunk, so a chunk never has the id of a blob */
+    private static final byte[] CHUNK_PREFIX = "chunk\0".getBytes(StandardCharsets.UTF_8);
+
+    /** the longest chain of deltas gc builds before storing a blob whole */
+    static final int MAX_DELTA_DEPTH = 10;
+    /** blobs larger than this are never delta-encoded */
+    static final int MAX_DELTA_SIZE = 32 << 20;
+    /** the total size of the blob contents kept in memory */
+    static final long BLOB_CACHE_SIZE = 32 << 20;
+
+    /**
+     * packs of this repository, loaded on first use
+     */
+    private static List<Pack> packs;
+
+    /**
+     * the loose objects written since the last sync
+     */
+    private static final Set<File> UNSYNCED = ConcurrentHashMap.newKeySet();
+    /**
+     * the directories names were added to since the last sync
+     */
+    private static final Set<File> UNSYNCED_DIRS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * recently read blob contents, including materialized delta bases
+     */
+    private static final LruCache<String, byte[]> BLOB_CACHE =
+            new LruCache<>("blobs", BLOB_CACHE_SIZE, content -> content.length);
+
+    /**
+     * check if the object ID of type TYPE exists, loose or packed
+     */
+    static boolean contains(byte type, String id) {
+        return looseFile(type, id).exists() || findPacked(id) != null;
+    }
+
+    /**
+     * read the content of the object ID of type TYPE, or null if it does not exist.
+     * blob contents are cached and shared, so callers must not modify them
+     */
+    static byte[] read(byte type, String id) {
+        byte[] content = type == BLOB ? BLOB_CACHE.get(id) : null;
+        if (content == null) {
+            long start = Profile.start();
+            content = readStored(type, id);
+            Profile.record(Profile.OBJECT_READ, start, content == null ? 0 : content.length);
+            if (type == BLOB && content != null) {
+                BLOB_CACHE.put(id, content);
+            }
+        }
+        return content;
+    }
+
+    private static byte[] readStored(byte type, String id) {
+        File loose = looseFile(type, id);
+        if (loose.exists()) {
+            return decode(type, readContents(loose));
+        }
+        for (Pack pack : packs()) {
+            int pos = pack.find(id);
+            if (pos >= 0) {
+                if (pack.typeAt(pos) == DELTA) {
+                    return readDelta(pack.read(pos));
+                }
+                return decode(type, pack.read(pos));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * the content of an object of type TYPE stored as STORED
+     */
+    private static byte[] decode(byte type, byte[] stored) {
+        if (type == BLOB && Manifest.isManifest(stored)) {
+            return assemble(Manifest.decode(stored));
+        }
+        return type == BLOB || type == CHUNK ? BlobCodec.decode(stored) : stored;
+    }
+
+    /**
+     * the content of the blob made of the chunks of MANIFEST
+     */
+    private static byte[] assemble(Manifest manifest) {
+        if (manifest.size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("blob of " + manifest.size
+                    + " bytes is too large to read into memory");
+        }
+        byte[] content = new byte[(int) manifest.size];
+        int position = 0;
+        for (String chunk : manifest.chunks) {
+            byte[] bytes = readChunk(chunk);
+            System.arraycopy(bytes, 0, content, position, bytes.length);
+            position += bytes.length;
+        }
+        return content;
+    }
+
+    private static byte[] readChunk(String id) {
+        byte[] chunk = readStored(CHUNK, id);
+        if (chunk == null) {
+            throw new IllegalArgumentException("missing chunk " + id);
+        }
+        return chunk;
+    }
+
+    /**
+     * write the content of the blob ID to TARGET without holding it in
+     * memory: an uncompressed blob or chunk is copied from its loose file or
+     * pack with FileChannel.transferTo, a compressed one is decoded while it
+     * is copied, and a blob stored as chunks is copied a chunk at a time.
+     * only a packed delta is materialized, and it is at most MAX_DELTA_SIZE.
+     * a missing blob is reported before TARGET is touched
+     */
+    static void copyBlob(String id, File target) {
+        long start = Profile.start();
+        byte[] cached = BLOB_CACHE.get(id);
+        if (cached == null && !contains(BLOB, id)) {
+            throw new IllegalArgumentException("missing blob " + id);
+        }
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (cached != null) {
+                writeFully(out, ByteBuffer.wrap(cached));
+            } else {
+                copyStored(BLOB, id, out);
+            }
+            Profile.record(Profile.COPY_BLOB, start, out.position());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * copy the content of the blob or chunk ID of type TYPE to OUT
+     */
+    private static void copyStored(byte type, String id, FileChannel out) throws IOException {
+        File loose = looseFile(type, id);
+        if (loose.exists()) {
+            copyEncoded(loose, 0, loose.length(), out);
+            return;
+        }
+        Pack pack = findPacked(id);
+        if (pack == null) {
+            throw new IllegalArgumentException("missing " + (type == CHUNK ? "chunk " : "blob ") + id);
+        }
+        int pos = pack.find(id);
+        if (pack.typeAt(pos) == DELTA) {
+            writeFully(out, ByteBuffer.wrap(read(BLOB, id)));
+            return;
+        }
+        copyEncoded(pack.packFile(), pack.contentOffset(pos), pack.contentLength(pos), out);
+    }
+
+    /**
+     * copy the content of the blob or chunk stored in the LENGTH bytes at
+     * POSITION of FILE to OUT
+     */
+    private static void copyEncoded(File file, long position, long length, FileChannel out)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            byte[] bytes = readAt(in, position, (int) Math.min(length, BlobCodec.HEADER_SIZE));
+            if (!BlobCodec.hasHeader(bytes)) {
+                transfer(in, position, length, out);
+            } else if (Manifest.isManifest(bytes)) {
+                for (String chunk : Manifest.decode(readAt(in, position, (int) length)).chunks) {
+                    copyStored(CHUNK, chunk, out);
+                }
+            } else if (BlobCodec.byId(bytes[3]) == BlobCodec.NONE) {
+                transfer(in, position + BlobCodec.HEADER_SIZE,
+                        length - BlobCodec.HEADER_SIZE, out);
+            } else {
+                long size = ByteBuffer.wrap(bytes, 4, 8).getLong();
+                in.position(position + BlobCodec.HEADER_SIZE);
+                try (InputStream decoded = BlobCodec.byId(bytes[3]).decoder(
+                        new BufferedInputStream(Channels.newInputStream(in), BUFFER_SIZE))) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    while (size > 0) {
+                        int n = decoded.read(buffer, 0, (int) Math.min(buffer.length, size));
+                        if (n < 0) {
+                            throw new IOException("truncated blob");
+                        }
+                        writeFully(out, ByteBuffer.wrap(buffer, 0, n));
+                        size -= n;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * copy the LENGTH bytes at POSITION of IN to OUT, in the kernel where it can
+     */
+    private static void transfer(FileChannel in, long position, long length, FileChannel out)
+            throws IOException {
+        while (length > 0) {
+            long n = in.transferTo(position, length, out);
+            if (n <= 0) {
+                throw new IOException("truncated blob");
+            }
+            position += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * the LENGTH bytes at POSITION of IN, zero past the end of IN
+     */
+    private static byte[] readAt(FileChannel in, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && in.read(buffer, position + buffer.position()) >= 0) {
+            continue;
+        }
+        return buffer.array();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * the ids of the chunks of the blob ID, empty if it is not stored as chunks
+     */
+    static List<String> chunks(String id) {
+        byte[] stored = storedManifest(id);
+        return stored == null ? new ArrayList<>() : Manifest.decode(stored).chunks;
+    }
+
+    /**
+     * the stored manifest of the blob ID, or null if it is not stored as
+     * chunks. only the header of a loose blob is read to find out
+     */
+    private static byte[] storedManifest(String id) {
+        File loose = looseFile(BLOB, id);
+        if (loose.exists()) {
+            try (InputStream in = Files.newInputStream(loose.toPath())) {
+                if (!Manifest.isManifest(in.readNBytes(BlobCodec.HEADER_SIZE))) {
+                    return null;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return readContents(loose);
+        }
+        Pack pack = findPacked(id);
+        if (pack == null || pack.typeAt(pack.find(id)) != MANIFEST) {
+            return null;
+        }
+        return pack.read(pack.find(id));
+    }
+
+    /**
+     * the content of a blob stored as the delta entry STORED.
+     * the base is read through the blob cache, since consecutive versions
+     * of a file usually share the same chain
+     */
+    private static byte[] readDelta(byte[] stored) {
+        byte[] base = read(BLOB, toHex(stored, 0));
+        byte[] delta = BlobCodec.decode(Arrays.copyOfRange(stored, 20, stored.length));
+        return Delta.apply(base, delta);
+    }
+
+    /**
+     * the stored form of the blob ID outside of a delta chain
+     */
+    private static byte[] storedWhole(String id) {
+        File loose = looseFile(BLOB, id);
+        if (loose.exists()) {
+            return readContents(loose);
+        }
+        Pack pack = findPacked(id);
+        int pos = pack.find(id);
+        if (pack.typeAt(pos) == DELTA) {
+            return BlobCodec.encode(read(BLOB, id));
+        }
+        return pack.read(pos);
+    }
+
+    /**
+     * write CONTENT as the loose object ID of type TYPE
+     */
+    static void write(byte type, String id, byte[] content) {
+        long start = Profile.start();
+        File temp = tempFile(type);
+        writeContents(temp, type == BLOB || type == CHUNK ? BlobCodec.encode(content) : content);
+        moveInto(temp, looseFile(type, id));
+        Profile.record(Profile.OBJECT_WRITE, start, content.length);
+    }
+
+    /**
+     * write the contents of SOURCE as a loose object of type TYPE and return its id.
+     * SOURCE is read once, in chunks: every chunk is hashed and written to a
+     * temporary file, which is renamed into place once the id is known.
+     * blobs are encoded with the codec chosen from the size and the first chunk,
+     * or stored as chunks from CHUNK_THRESHOLD bytes on
+     */
+    static String write(byte type, File source) {
+        if (type == BLOB && source.length() >= CHUNK_THRESHOLD) {
+            //every new chunk is written, and profiled, as an object of its own
+            return writeChunked(source);
+        }
+        long start = Profile.start();
+        File temp = tempFile(type);
+        MessageDigest md = newSha1();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream in = Files.newInputStream(source.toPath());
+             OutputStream file = new BufferedOutputStream(
+                     Files.newOutputStream(temp.toPath()), BUFFER_SIZE)) {
+            int n = in.readNBytes(buffer, 0, buffer.length);
+            OutputStream out = file;
+            if (type == BLOB) {
+                BlobCodec codec = BlobCodec.choose(source.length(), buffer, n);
+                BlobCodec.writeHeader(file, codec, source.length());
+                out = codec.encoder(file);
+            }
+            while (n > 0) {
+                md.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+                size += n;
+                n = in.read(buffer);
+            }
+            out.close();
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (type == BLOB && size != source.length()) {
+            fixBlobSize(temp, size);
+        }
+        String id = toHex(md.digest(), 0);
+        moveInto(temp, looseFile(type, id));
+        Profile.record(Profile.OBJECT_WRITE, start, size);
+        return id;
+    }
+
+    /**
+     * write the contents of SOURCE as a blob stored as chunks and return its id.
+     * SOURCE is read once, through a buffer that always holds the longest
+     * possible chunk; only the chunks that do not exist yet are written
+     */
+    private static String writeChunked(File source) {
+        MessageDigest md = newSha1();
+        Manifest manifest = new Manifest();
+        byte[] buffer = new byte[4 * Chunker.MAX_SIZE];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            while (true) {
+                if (!eof && end - start < Chunker.MAX_SIZE) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    int n = in.readNBytes(buffer, end, buffer.length - end);
+                    eof = end + n < buffer.length;
+                    end += n;
+                }
+                if (start == end) {
+                    break;
+                }
+                int length = Chunker.cut(buffer, start, end);
+                md.update(buffer, start, length);
+                manifest.add(writeChunk(buffer, start, length), length);
+                start += length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = toHex(md.digest(), 0);
+        if (!contains(BLOB, id)) {
+            File temp = tempFile(BLOB);
+            writeContents(temp, manifest.encode());
+            moveInto(temp, looseFile(BLOB, id));
+        }
+        return id;
+    }
+
+    /**
+     * write the LENGTH bytes of DATA at FROM as a chunk, unless it exists, and return its id
+     */
+    private static String writeChunk(byte[] data, int from, int length) {
+        MessageDigest md = newSha1();
+        md.update(CHUNK_PREFIX);
+        md.update(data, from, length);
+        String id = toHex(md.digest(), 0);
+        if (!contains(CHUNK, id)) {
+            write(CHUNK, id, Arrays.copyOfRange(data, from, from + length));
+        }
+        return id;
+    }
+
+    /**
+     * give a header to every blob stored before blobs had one whose content
+     * happens to start like a header, so it is not decoded as something else.
+     * such a blob is stored as it is, so it still hashes to its own id; it is
+     * written again as a loose object, which is found before a packed one.
+     * packs from before blobs had headers contain no deltas
+     */
+    static void migrateBlobs() {
+        for (String id : looseIds(BLOB)) {
+            File loose = looseFile(BLOB, id);
+            try (InputStream in = Files.newInputStream(loose.toPath())) {
+                if (!BlobCodec.hasHeader(in.readNBytes(BlobCodec.HEADER_SIZE))) {
+                    continue;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            migrateBlob(id, readContents(loose));
+        }
+        for (Pack pack : packs()) {
+            for (String id : pack.ids(BLOB)) {
+                byte[] stored = pack.read(pack.find(id));
+                if (BlobCodec.hasHeader(stored) && !looseFile(BLOB, id).exists()) {
+                    migrateBlob(id, stored);
+                }
+            }
+        }
+    }
+
+    private static void migrateBlob(String id, byte[] stored) {
+        if (sha1(stored).equals(id)) {
+            write(BLOB, id, stored);
+        }
+    }
+
+    /**
+     * the total size in bytes of all loose objects and packs
+     */
+    static long storedBytes() {
+        long total = 0;
+        for (File dir : new File[]{Repository.COMMITS, Repository.BLOBS, TREES, CHUNKS, PACKS}) {
+            if (!dir.exists()) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                total += paths.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * all ids of objects of type TYPE, loose or packed, in sorted order
+     */
+    static List<String> ids(byte type) {
+        TreeSet<String> result = new TreeSet<>(looseIds(type));
+        for (Pack pack : packs()) {
+            result.addAll(pack.ids(type));
+            if (type == BLOB) {
+                result.addAll(pack.ids(DELTA));
+                result.addAll(pack.ids(MANIFEST));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * gitlet gc
+     * move every object in LIVE, loose or packed, into one new pack, then
+     * delete the loose files and the old packs, and with them every object
+     * that is not in LIVE.
+     * blobs that are versions of the same file are stored as deltas
+     * against each other, see planDeltas.
+     * returns the number of objects deleted
+     */
+    static int gc(Reachability live) {
+        PACKS.mkdir();
+        List<Pack> oldPacks = packs();
+        List<String> looseBlobs = looseIds(BLOB);
+        List<String> looseCommits = looseIds(COMMIT);
+        List<String> looseTrees = looseIds(TREE);
+        List<String> looseChunks = looseIds(CHUNK);
+        int dead = 0;
+        for (byte type : new byte[]{COMMIT, TREE, BLOB, CHUNK}) {
+            for (String id : ids(type)) {
+                if (!live.contains(type, id)) {
+                    dead += 1;
+                }
+            }
+        }
+        if (oldPacks.size() <= 1 && looseBlobs.isEmpty() && looseCommits.isEmpty()
+                && looseTrees.isEmpty() && looseChunks.isEmpty() && dead == 0) {
+            return 0;
+        }
+        Map<String, String> bases = planDeltas(live);
+        Pack.Writer writer = new Pack.Writer(PACKS);
+        for (String id : ids(COMMIT)) {
+            if (live.contains(COMMIT, id)) {
+                writer.add(COMMIT, id, read(COMMIT, id));
+            }
+        }
+        for (String id : ids(TREE)) {
+            if (live.contains(TREE, id)) {
+                writer.add(TREE, id, read(TREE, id));
+            }
+        }
+        for (String id : ids(BLOB)) {
+            if (!live.contains(BLOB, id)) {
+                continue;
+            }
+            byte[] manifest = storedManifest(id);
+            if (manifest != null) {
+                writer.add(MANIFEST, id, manifest);
+                continue;
+            }
+            byte[] whole = storedWhole(id);
+            String base = bases.get(id);
+            if (base != null) {
+                byte[] delta = BlobCodec.encode(Delta.create(read(BLOB, base), read(BLOB, id)));
+                if (delta.length + 20 < whole.length / 2) {
+                    byte[] entry = new byte[20 + delta.length];
+                    System.arraycopy(toRaw(base), 0, entry, 0, 20);
+                    System.arraycopy(delta, 0, entry, 20, delta.length);
+                    writer.add(DELTA, id, entry);
+                    continue;
+                }
+            }
+            writer.add(BLOB, id, whole);
+        }
+        for (String id : ids(CHUNK)) {
+            if (live.contains(CHUNK, id)) {
+                File loose = looseFile(CHUNK, id);
+                writer.add(CHUNK, id, loose.exists() ? readContents(loose)
+                        : findPacked(id).read(findPacked(id).find(id)));
+            }
+        }
+        Pack packed = writer.finish();
+        for (Pack pack : oldPacks) {
+            pack.close();
+            if (!pack.packFile().equals(packed.packFile())) {
+                pack.indexFile().delete();
+                pack.packFile().delete();
+            }
+        }
+        for (String id : looseCommits) {
+            looseFile(COMMIT, id).delete();
+        }
+        for (String id : looseBlobs) {
+            File file = looseFile(BLOB, id);
+            file.delete();
+            file.getParentFile().delete();
+        }
+        for (String id : looseTrees) {
+            File file = looseFile(TREE, id);
+            file.delete();
+            file.getParentFile().delete();
+        }
+        for (String id : looseChunks) {
+            File file = looseFile(CHUNK, id);
+            file.delete();
+            file.getParentFile().delete();
+        }
+        packs = new ArrayList<>();
+        packs.add(packed);
+        return dead;
+    }
+
+    /**
+     * choose the delta base of every blob worth delta-encoding.
+     * the versions of each file are collected from the newest commit in LIVE
+     * to the oldest, and each version is encoded against the next newer one, so
+     * the newest version of a file is stored whole and is the cheapest to
+     * read. every blob gets one base at most, assigned only after its base
+     * was assigned, so chains never form cycles, and chains are cut after
+     * MAX_DELTA_DEPTH deltas.
+     */
+    private static Map<String, String> planDeltas(Reachability live) {
+        CommitGraph graph = CommitGraph.get();
+        Map<String, List<String>> versions = new LinkedHashMap<>();
+        Set<String> tooLarge = new HashSet<>();
+        for (int pos = graph.size() - 1; pos >= 0; pos--) {
+            if (!live.contains(COMMIT, graph.id(pos))) {
+                continue;
+            }
+            Commit commit = Commit.getCommit(graph.id(pos));
+            for (String file : commit.getFileNames()) {
+                String blob = commit.getFileContentSha1(file);
+                List<String> history = versions.computeIfAbsent(file, k -> new ArrayList<>());
+                if (!history.contains(blob)) {
+                    history.add(blob);
+                }
+            }
+        }
+        Map<String, String> bases = new HashMap<>();
+        Map<String, Integer> depths = new HashMap<>();
+        for (List<String> history : versions.values()) {
+            for (int i = 1; i < history.size(); i++) {
+                String base = history.get(i - 1);
+                String target = history.get(i);
+                if (depths.containsKey(target)) {
+                    continue;
+                }
+                depths.putIfAbsent(base, 0);
+                if (depths.get(base) >= MAX_DELTA_DEPTH
+                        || sizeOf(base, tooLarge) > MAX_DELTA_SIZE
+                        || sizeOf(target, tooLarge) > MAX_DELTA_SIZE) {
+                    depths.put(target, 0);
+                    continue;
+                }
+                bases.put(target, base);
+                depths.put(target, depths.get(base) + 1);
+            }
+        }
+        return bases;
+    }
+
+    /**
+     * the raw size of the blob ID, as far as it matters for delta encoding
+     */
+    private static long sizeOf(String id, Set<String> tooLarge) {
+        if (tooLarge.contains(id)) {
+            return Long.MAX_VALUE;
+        }
+        //chunks are already shared between versions
+        if (storedManifest(id) != null) {
+            tooLarge.add(id);
+            return Long.MAX_VALUE;
+        }
+        byte[] content = read(BLOB, id);
+        if (content == null) {
+            tooLarge.add(id);
+            return Long.MAX_VALUE;
+        }
+        if (content.length > MAX_DELTA_SIZE) {
+            tooLarge.add(id);
+        }
+        return content.length;
+    }
+
+    /**
+     * the loose file of the object ID of type TYPE
+     */
+    private static File looseFile(byte type, String id) {
+        if (type == COMMIT) {
+            return join(Repository.COMMITS, id);
+        }
+        return join(looseDir(type), id.substring(0, 2), id.substring(2));
+    }
+
+    /**
+     * the directory of the loose objects of type TYPE
+     */
+    private static File looseDir(byte type) {
+        if (type == COMMIT) {
+            return Repository.COMMITS;
+        }
+        if (type == CHUNK) {
+            return CHUNKS;
+        }
+        return type == TREE ? TREES : Repository.BLOBS;
+    }
+
+    /**
+     * correct the raw length in the header of the stored blob FILE to SIZE,
+     * for a source file that changed size while it was being read
+     */
+    private static void fixBlobSize(File file, long size) {
+        try (RandomAccessFile blob = new RandomAccessFile(file, "rw")) {
+            blob.seek(4);
+            blob.writeLong(size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * a new temporary file next to the loose objects of type TYPE
+     */
+    private static File tempFile(byte type) {
+        File dir = looseDir(type);
+        dir.mkdir();
+        try {
+            return Files.createTempFile(dir.toPath(), "tmp-", null).toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * atomically rename TEMP to the loose object file LOOSE
+     */
+    private static void moveInto(File temp, File loose) {
+        if (loose.getParentFile().mkdir()) {
+            UNSYNCED_DIRS.add(loose.getParentFile().getParentFile());
+        }
+        try {
+            Files.move(temp.toPath(), loose.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        UNSYNCED.add(loose);
+        UNSYNCED_DIRS.add(loose.getParentFile());
+    }
+
+    /**
+     * flush the loose objects written since the last sync to the disk,
+     * together with the directories their names were added to, so a ref or
+     * stage committed after them never names an object lost in a crash.
+     * every file and directory is synced once, in parallel, which lets the
+     * file system batch them
+     */
+    static void sync() {
+        List<File> files = new ArrayList<>(UNSYNCED);
+        UNSYNCED.removeAll(files);
+        List<File> dirs = new ArrayList<>(UNSYNCED_DIRS);
+        UNSYNCED_DIRS.removeAll(dirs);
+        files.parallelStream().forEach(Utils::fsync);
+        dirs.parallelStream().forEach(Utils::fsync);
+    }
+
+    private static List<String> looseIds(byte type) {
+        List<String> result = new ArrayList<>();
+        if (type == COMMIT) {
+            List<String> commits = plainFilenamesIn(Repository.COMMITS);
+            if (commits != null) {
+                for (String commit : commits) {
+                    if (!commit.startsWith("tmp-")) {
+                        result.add(commit);
+                    }
+                }
+            }
+            return result;
+        }
+        File dir = looseDir(type);
+        List<String> folders = plainFolderNamesIn(dir);
+        if (folders == null) {
+            return result;
+        }
+        for (String folder : folders) {
+            for (String rest : plainFilenamesIn(join(dir, folder))) {
+                result.add(folder + rest);
+            }
+        }
+        return result;
+    }
+
+    private static Pack findPacked(String id) {
+        for (Pack pack : packs()) {
+            if (pack.find(id) >= 0) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * prepare for the next command in this process: the open packs are kept
+     * only if no pack was added or removed, e.g. by gc in another process
+     */
+    static synchronized void refresh() {
+        if (packs == null) {
+            return;
+        }
+        Set<File> indexes = new HashSet<>();
+        List<String> files = plainFilenamesIn(PACKS);
+        if (files != null) {
+            for (String file : files) {
+                if (file.endsWith(".idx")) {
+                    indexes.add(join(PACKS, file));
+                }
+            }
+        }
+        Set<File> open = new HashSet<>();
+        for (Pack pack : packs) {
+            open.add(pack.indexFile());
+        }
+        if (!open.equals(indexes)) {
+            for (Pack pack : packs) {
+                pack.close();
+            }
+            packs = null;
+        }
+    }
+
+    private static synchronized List<Pack> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> files = plainFilenamesIn(PACKS);
+            if (files != null) {
+                for (String file : files) {
+                    if (file.endsWith(".idx")) {
+                        packs.add(Pack.open(join(PACKS, file)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+}
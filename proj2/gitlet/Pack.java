@@ -0,0 +1,319 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * A pack of gitlet objects: one append-only data file plus a sorted index.
+ *
+ * pack-[name].pack:
+ * "GPAK" | version | entries (type byte, length int, data)
+ * pack-[name].idx:
+ * "GPIX" | version | count | fanout[256] | ids (20 bytes each, sorted)
+ * | types (1 byte each) | offsets (8 bytes each)
+ *
+ * The index is read once per process, lookups are a binary search inside
+ * one fanout bucket, and the data file stays open for positional reads,
+ * which threads may share.
+ *
+ * @author winter
+ */
+class Pack {
+    private static final int PACK_MAGIC = 0x4750414b;
+    private static final int INDEX_MAGIC = 0x47504958;
+    private static final int VERSION = 1;
+
+    private final File packFile;
+    private final File indexFile;
+    private final int[] fanout = new int[256];
+    private byte[] ids;
+    private byte[] types;
+    private long[] offsets;
+    private FileChannel data;
+
+    private Pack(File packFile, File indexFile) {
+        this.packFile = packFile;
+        this.indexFile = indexFile;
+        loadIndex();
+    }
+
+    /**
+     * open the pack whose index is INDEXFILE
+     */
+    static Pack open(File indexFile) {
+        String name = indexFile.getName();
+        String base = name.substring(0, name.length() - ".idx".length());
+        return new Pack(join(indexFile.getParentFile(), base + ".pack"), indexFile);
+    }
+
+    int size() {
+        return types.length;
+    }
+
+    File packFile() {
+        return packFile;
+    }
+
+    File indexFile() {
+        return indexFile;
+    }
+
+    /**
+     * the position of ID in the index, or -1
+     */
+    int find(String id) {
+        byte[] key = toRaw(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout[first - 1];
+        int hi = fanout[first] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    String idAt(int pos) {
+        return toHex(ids, pos * 20);
+    }
+
+    byte typeAt(int pos) {
+        return types[pos];
+    }
+
+    /**
+     * the position in the pack file of the content of the object at POS
+     */
+    long contentOffset(int pos) {
+        return offsets[pos] + 5;
+    }
+
+    /**
+     * the length of the content of the object at POS
+     */
+    int contentLength(int pos) {
+        try {
+            ByteBuffer header = ByteBuffer.allocate(5);
+            readFully(channel(), header, offsets[pos]);
+            header.flip();
+            header.get();
+            return header.getInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * read the content of the object at POS
+     */
+    byte[] read(int pos) {
+        try {
+            FileChannel channel = channel();
+            ByteBuffer header = ByteBuffer.allocate(5);
+            readFully(channel, header, offsets[pos]);
+            header.flip();
+            header.get();
+            ByteBuffer content = ByteBuffer.allocate(header.getInt());
+            readFully(channel, content, offsets[pos] + 5);
+            return content.array();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * all ids of type TYPE in this pack, in sorted order
+     */
+    List<String> ids(byte type) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < size(); i++) {
+            if (types[i] == type) {
+                result.add(idAt(i));
+            }
+        }
+        return result;
+    }
+
+    synchronized void close() {
+        try {
+            if (data != null) {
+                data.close();
+                data = null;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * the data file, opened on the first read. synchronized, as the
+     * parallel streams of gc and add read one pack from several threads
+     */
+    private synchronized FileChannel channel() throws IOException {
+        if (data == null) {
+            data = new RandomAccessFile(packFile, "r").getChannel();
+        }
+        return data;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("truncated pack file");
+            }
+            position += n;
+        }
+    }
+
+    private int compareId(int pos, byte[] key) {
+        return Arrays.compareUnsigned(ids, pos * 20, pos * 20 + 20, key, 0, 20);
+    }
+
+    private void loadIndex() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("bad pack index " + indexFile);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < 256; i++) {
+                fanout[i] = in.readInt();
+            }
+            ids = new byte[count * 20];
+            in.readFully(ids);
+            types = new byte[count];
+            in.readFully(types);
+            offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.readLong();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Writes a new pack one object at a time, so packing never needs more
+     * than one object in memory. The files are written under temporary
+     * names and renamed into place by finish(), the index last, so a
+     * half-written pack is never visible.
+     */
+    static class Writer {
+        private final File dir;
+        private final File packTemp;
+        private final DataOutputStream out;
+        private final List<String> ids = new ArrayList<>();
+        private final List<Byte> types = new ArrayList<>();
+        private final List<Long> offsets = new ArrayList<>();
+        private long position;
+
+        Writer(File dir) {
+            this.dir = dir;
+            this.packTemp = join(dir, "pack.tmp");
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(packTemp.toPath()), 1 << 16));
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                position = 8;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        void add(byte type, String id, byte[] content) {
+            try {
+                ids.add(id);
+                types.add(type);
+                offsets.add(position);
+                out.writeByte(type);
+                out.writeInt(content.length);
+                out.write(content);
+                position += 5 + content.length;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        int count() {
+            return ids.size();
+        }
+
+        Pack finish() {
+            Integer[] order = new Integer[ids.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> ids.get(a).compareTo(ids.get(b)));
+            StringBuilder names = new StringBuilder();
+            for (int i : order) {
+                names.append(ids.get(i));
+            }
+            String name = "pack-" + sha1(names.toString());
+            File packFile = join(dir, name + ".pack");
+            File indexFile = join(dir, name + ".idx");
+            File indexTemp = join(dir, name + ".idx.tmp");
+            try {
+                out.close();
+                try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(indexTemp.toPath()), 1 << 16))) {
+                    index.writeInt(INDEX_MAGIC);
+                    index.writeInt(VERSION);
+                    index.writeInt(order.length);
+                    int[] fanout = new int[256];
+                    for (String id : ids) {
+                        fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+                    }
+                    int total = 0;
+                    for (int i = 0; i < 256; i++) {
+                        total += fanout[i];
+                        index.writeInt(total);
+                    }
+                    for (int i : order) {
+                        index.write(toRaw(ids.get(i)));
+                    }
+                    for (int i : order) {
+                        index.writeByte(types.get(i));
+                    }
+                    for (int i : order) {
+                        index.writeLong(offsets.get(i));
+                    }
+                }
+                //gc deletes the loose objects and old packs once the new pack is durable
+                fsync(packTemp);
+                fsync(indexTemp);
+                Files.move(packTemp.toPath(), packFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(indexTemp.toPath(), indexFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                fsync(dir);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return new Pack(packFile, indexFile);
+        }
+    }
+}
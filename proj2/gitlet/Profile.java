@@ -0,0 +1,146 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts, bytes and time per operation of a command, for gitlet --profile.
+ * An operation is timed by
+ *     long start = Profile.start();
+ *     ...
+ *     Profile.record(Profile.OPERATION, start, bytes);
+ * Both are a single check of a static flag while profiling is off, so the
+ * calls stay in place. The counters are atomic, since hashing, scanning
+ * and checkout record from many threads at once. Times are inclusive:
+ * "objectRead" contains the "readContents" of a loose object, and
+ * "command" contains everything.
+ * "jvm start" is the time from the start of the JVM to Main.main, which
+ * a command of gitlet serve does not pay.
+ *
+ * @author winter
+ */
+class Profile {
+    static final int COMMAND = 0;
+    static final int LOCK = 1;
+    static final int READ_CONTENTS = 2;
+    static final int WRITE_CONTENTS = 3;
+    static final int READ_OBJECT = 4;
+    static final int WRITE_OBJECT = 5;
+    static final int SHA1 = 6;
+    static final int FILE_SHA1 = 7;
+    static final int ENCODE = 8;
+    static final int DECODE = 9;
+    static final int OBJECT_READ = 10;
+    static final int OBJECT_WRITE = 11;
+    static final int COPY_BLOB = 12;
+
+    private static final String[] NAMES = {"command", "lock", "readContents", "writeContents",
+        "readObject", "writeObject", "sha1", "fileSha1", "encode", "decode",
+        "objectRead", "objectWrite", "copyBlob"};
+
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(NAMES.length);
+    private static final AtomicLongArray BYTES = new AtomicLongArray(NAMES.length);
+    private static final AtomicLongArray NANOS = new AtomicLongArray(NAMES.length);
+
+    private static boolean enabled;
+    /** the command being profiled */
+    private static String command = "";
+    /** milliseconds from the start of the JVM to Main.main, or -1 in gitlet serve */
+    private static long jvmStartMillis = -1;
+
+    /**
+     * start profiling the command NAME from zero. FROMMAIN is whether it
+     * runs in a process of its own, started just now
+     */
+    static void enable(String name, boolean fromMain) {
+        for (int i = 0; i < NAMES.length; i++) {
+            COUNTS.set(i, 0);
+            BYTES.set(i, 0);
+            NANOS.set(i, 0);
+        }
+        command = name;
+        jvmStartMillis = fromMain ? ManagementFactory.getRuntimeMXBean().getUptime() : -1;
+        enabled = true;
+    }
+
+    static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * the start time of an operation, or 0 if profiling is off
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * record an operation OP on BYTES bytes that started at START
+     */
+    static void record(int op, long start, long bytes) {
+        if (!enabled) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        COUNTS.incrementAndGet(op);
+        BYTES.addAndGet(op, bytes);
+        NANOS.addAndGet(op, nanos);
+    }
+
+    /**
+     * print the counters to OUT as a table
+     */
+    static void print(PrintStream out) {
+        out.printf("profile of %s%n", command.isEmpty() ? "(no command)" : command);
+        out.printf("%-14s %8s %14s %12s %12s%n", "operation", "count", "bytes", "total ms", "avg us");
+        if (jvmStartMillis >= 0) {
+            out.printf("%-14s %8s %14s %12d%n", "jvm start", "", "", jvmStartMillis);
+        }
+        for (int i = 0; i < NAMES.length; i++) {
+            long count = COUNTS.get(i);
+            if (count == 0) {
+                continue;
+            }
+            out.printf("%-14s %8d %14d %12.3f %12.1f%n", NAMES[i], count, BYTES.get(i),
+                    NANOS.get(i) / 1e6, NANOS.get(i) / 1e3 / count);
+        }
+    }
+
+    /**
+     * print the counters to OUT as one JSON object:
+     * {"command": ..., "jvmStartMillis": ..., "operations": {name: {"count", "bytes", "nanos"}}}.
+     * jvmStartMillis is null in gitlet serve
+     */
+    static void printJson(PrintStream out) {
+        StringBuilder json = new StringBuilder("{\"command\": ");
+        quote(json, command);
+        json.append(", \"jvmStartMillis\": ").append(jvmStartMillis >= 0 ? jvmStartMillis : "null");
+        json.append(", \"operations\": {");
+        String separator = "";
+        for (int i = 0; i < NAMES.length; i++) {
+            json.append(separator);
+            quote(json, NAMES[i]);
+            json.append(": {\"count\": ").append(COUNTS.get(i))
+                    .append(", \"bytes\": ").append(BYTES.get(i))
+                    .append(", \"nanos\": ").append(NANOS.get(i)).append('}');
+            separator = ", ";
+        }
+        json.append("}}");
+        out.println(json);
+    }
+
+    private static void quote(StringBuilder json, String s) {
+        json.append('"');
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
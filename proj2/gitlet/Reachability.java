@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/**
+ * The objects reachable from the branches, HEAD and the staging area, i.e.
+ * everything gc has to keep. The reachable commits are the union of the
+ * reachability bitmaps of the roots (see CommitBitmaps); the trees of the
+ * reachable commits are then walked in parallel, sharing the sets of marked
+ * trees and blobs, so a subtree shared by many commits is walked once.
+ * The chunks of the reachable blobs stored as chunks are reachable too.
+ *
+ * @author winter
+ */
+class Reachability {
+    final Set<String> commits = ConcurrentHashMap.newKeySet();
+    final Set<String> trees = ConcurrentHashMap.newKeySet();
+    final Set<String> blobs = ConcurrentHashMap.newKeySet();
+    final Set<String> chunks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * mark everything reachable in this repository
+     */
+    static Reachability mark() {
+        List<String> roots = new ArrayList<>();
+        for (String branch : plainFilenamesIn(Repository.BRANCH)) {
+            roots.add(Transaction.readString(join(Repository.BRANCH, branch)));
+        }
+        roots.add(Transaction.readString(Repository.HEAD));
+        Reachability live = new Reachability();
+        CommitGraph graph = CommitGraph.get(roots.toArray(new String[0]));
+        Bitmap reachable = new Bitmap();
+        for (String root : roots) {
+            reachable.or(graph.reachable(graph.position(root)));
+        }
+        Set<String> rootTrees = ConcurrentHashMap.newKeySet();
+        reachable.forEach(pos -> {
+            live.commits.add(graph.id(pos));
+            rootTrees.add(graph.tree(pos));
+        });
+        rootTrees.parallelStream().forEach(live::markTree);
+        live.blobs.addAll(FileTracker.read(Repository.ADDITION).getFileSha1s());
+        live.blobs.parallelStream().forEach(id -> live.chunks.addAll(ObjectStore.chunks(id)));
+        return live;
+    }
+
+    boolean contains(byte type, String id) {
+        switch (type) {
+            case ObjectStore.COMMIT:
+                return commits.contains(id);
+            case ObjectStore.TREE:
+                return trees.contains(id);
+            case ObjectStore.CHUNK:
+                return chunks.contains(id);
+            default:
+                return blobs.contains(id);
+        }
+    }
+
+    private void markTree(String id) {
+        if (!trees.add(id)) {
+            return;
+        }
+        Tree.forEachEntry(id, (subtree, entry) -> {
+            if (subtree) {
+                markTree(entry);
+            } else {
+                blobs.add(entry);
+            }
+        });
+    }
+}
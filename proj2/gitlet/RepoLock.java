@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static gitlet.Utils.*;
+
+/**
+ * The repository lock. Commands that only read the repository (log,
+ * global-log, find, status, diff) hold it shared and run side by side; every
+ * other command holds it exclusively, so writers run one at a time and
+ * never next to a reader.
+ * Between processes it is a FileChannel lock on .gitlet/index.lock, which
+ * the OS releases when the process exits, also through System.exit.
+ * Within a process the file lock cannot be taken twice, so threads first
+ * take a read-write lock, and the first reader in takes the file lock for
+ * all of them.
+ *
+ * @author winter
+ */
+class RepoLock {
+    /**
+     * The lock file: CWD/.gitlet/index.lock
+     */
+    static final File LOCK = join(Repository.GITLET_DIR, "index.lock");
+
+    private static final ReadWriteLock THREADS = new ReentrantReadWriteLock();
+    private static FileChannel channel;
+    private static FileLock fileLock;
+    /** the number of threads holding the lock in this process */
+    private static int holders;
+
+    /**
+     * whether COMMAND only reads the repository
+     */
+    static boolean isReadOnly(String command) {
+        switch (command) {
+            case "log":
+            case "global-log":
+            case "find":
+            case "status":
+            case "diff":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * block until this thread holds the lock, SHARED or exclusively
+     */
+    static void acquire(boolean shared) {
+        if (shared) {
+            THREADS.readLock().lock();
+        } else {
+            THREADS.writeLock().lock();
+        }
+        synchronized (RepoLock.class) {
+            if (holders == 0) {
+                try {
+                    channel = FileChannel.open(LOCK.toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                    fileLock = channel.lock(0, Long.MAX_VALUE, shared);
+                } catch (IOException excp) {
+                    unlock(shared);
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            holders += 1;
+        }
+    }
+
+    /**
+     * release the lock this thread took with acquire(SHARED)
+     */
+    static void release(boolean shared) {
+        synchronized (RepoLock.class) {
+            holders -= 1;
+            if (holders == 0) {
+                try {
+                    fileLock.release();
+                    channel.close();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                } finally {
+                    fileLock = null;
+                    channel = null;
+                    unlock(shared);
+                }
+                return;
+            }
+        }
+        unlock(shared);
+    }
+
+    private static void unlock(boolean shared) {
+        if (shared) {
+            THREADS.readLock().unlock();
+        } else {
+            THREADS.writeLock().unlock();
+        }
+    }
+}
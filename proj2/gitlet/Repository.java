@@ -1,12 +1,22 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import static gitlet.Utils.*;
 
 
@@ -65,6 +75,13 @@ public class Repository {
      */
     public static final File REMOVAL = join(STAGINGAREA, "removal");
 
+    /**
+     * The number of threads writing files in checkout and reset,
+     * set with -Dgitlet.checkout.threads
+     */
+    static final int CHECKOUT_THREADS = Integer.getInteger("gitlet.checkout.threads",
+            2 * Runtime.getRuntime().availableProcessors());
+
 
     /**
      * gitlet init
@@ -79,33 +96,62 @@ public class Repository {
     }
 
     /**
-     * gitlet add [filename]
-     * 1. read the previous FileTracker object
-     * 2. update the object
-     * 2.1 if the content is different, update the content
-     * 2.2 If the current working version of the file is
+     * gitlet add [filename] ... / gitlet add .
+     * a directory adds every file below it that is not ignored, "." all of them
+     * 1. read the staging areas and the HEAD commit once
+     * 2. hash the files and write their blobs in parallel
+     * 3. update the stage
+     * 3.1 if the content is different, update the content
+     * 3.2 If the current working version of the file is
      * identical to the version in the current commit,
      * delete it from the staging area.
-     * 3. write back to ADDITION
-     */
-    public static void add(String fileName) {
-        File file = join(CWD, fileName);
-        if (!file.exists()) {
-            System.out.print("File does not exist.");
-            System.exit(0);
+     * 3.3 if the file is staged for removal with the same content, unstage it
+     * 4. write back ADDITION and REMOVAL, once each
+     */
+    public static void add(String[] fileNames) {
+        Set<String> paths = new LinkedHashSet<>();
+        for (String fileName : fileNames) {
+            if (fileName.equals(".")) {
+                paths.addAll(WorkingTree.files());
+                continue;
+            }
+            String path = WorkingTree.normalize(fileName, "File does not exist.");
+            File file = join(CWD, path);
+            if (file.isDirectory()) {
+                paths.addAll(WorkingTree.files(path));
+            } else if (file.isFile()) {
+                paths.add(path);
+            } else {
+                throw error("File does not exist.");
+            }
         }
-        FileTracker addition = readObject(ADDITION, FileTracker.class);
-        addition.add(file);
-        writeObject(ADDITION, addition);
-
-        FileTracker removal = readObject(REMOVAL, FileTracker.class);
-        if (removal.trackedFiles.getOrDefault(fileName, "").equals(fileSha1(file))) {
-            removal.trackedFiles.remove(fileName);
-            writeObject(REMOVAL, removal);
+        List<String> names = new ArrayList<>(paths);
+        Map<String, String> head = Commit.getCurCommit().getTrackedFiles();
+        FileTracker addition = FileTracker.read(ADDITION);
+        FileTracker removal = FileTracker.read(REMOVAL);
+
+        List<String> sha1s = names.parallelStream()
+                .map(fileName -> writeBlob(join(CWD, fileName)))
+                .collect(Collectors.toList());
+
+        boolean removalChanged = false;
+        for (int i = 0; i < names.size(); i++) {
+            String fileName = names.get(i);
+            String sha1 = sha1s.get(i);
+            if (head.getOrDefault(fileName, "").equals(sha1)) {
+                addition.trackedFiles.remove(fileName);
+            } else {
+                addition.trackedFiles.put(fileName, sha1);
+            }
+            if (removal.trackedFiles.getOrDefault(fileName, "").equals(sha1)) {
+                removal.trackedFiles.remove(fileName);
+                removalChanged = true;
+            }
+        }
+        addition.write(ADDITION);
+        if (removalChanged) {
+            removal.write(REMOVAL);
         }
-        writeBlob(file);
-
-        //printAddStage();
     }
 
     /**
@@ -117,8 +163,7 @@ public class Repository {
      */
     public static void commit(String message) {
         if (message.equals("")) {
-            System.out.print("Please enter a commit message.");
-            System.exit(0);
+            throw error("Please enter a commit message.");
         }
         Commit curCommit = Commit.getCurCommit();
         Commit commit = new Commit(curCommit, message);
@@ -130,8 +175,7 @@ public class Repository {
      */
     public static void mergedCommit(String message, Commit secondParent) {
         if (message.equals("")) {
-            System.out.print("Please enter a commit message.");
-            System.exit(0);
+            throw error("Please enter a commit message.");
         }
         Commit firstParent = Commit.getCurCommit();
         MergedCommit mergedCommit = new MergedCommit(firstParent, secondParent, message);
@@ -147,21 +191,20 @@ public class Repository {
      * 2.2 remove it from the working directory
      */
     public static void rm(String filename) {
-        File file = join(CWD, filename);
-        FileTracker addStage = readObject(ADDITION, FileTracker.class);
+        filename = WorkingTree.normalize(filename, "No reason to remove the file.");
+        FileTracker addStage = FileTracker.read(ADDITION);
         Commit commit = Commit.getCurCommit();
 
         if (addStage.trackedFiles.containsKey(filename)) {
             addStage.trackedFiles.remove(filename);
-            writeObject(ADDITION, addStage);
-        } else if (commit.trackedFiles.containsKey(filename)) {
-            FileTracker removeStage = readObject(REMOVAL, FileTracker.class);
+            addStage.write(ADDITION);
+        } else if (commit.getTrackedFiles().containsKey(filename)) {
+            FileTracker removeStage = FileTracker.read(REMOVAL);
             removeStage.trackedFiles.put(filename, commit.getFileContentSha1(filename));
-            writeObject(REMOVAL, removeStage);
-            restrictedDelete(file);
+            removeStage.write(REMOVAL);
+            WorkingTree.delete(filename);
         } else {
-            System.out.print("No reason to remove the file.");
-            System.exit(0);
+            throw error("No reason to remove the file.");
         }
 
         //printAddStage();
@@ -172,26 +215,30 @@ public class Repository {
      * gitlet log
      * show commits start from the head commit
      */
-    public static void log() {
-        Commit commit = Commit.getCurCommit();
-        while (commit != null) {
-            commit.printCommit();
-            commit = Commit.getCommit(commit.getParent());
+    public static void log(String[] options) {
+        CommitLog log = CommitLog.of(options);
+        String head = Transaction.readString(HEAD);
+        if (log.excluded() == null) {
+            log.print(CommitLog.firstParents(head), true);
+            return;
         }
+        File branch = join(BRANCH, log.excluded());
+        if (!branch.exists()) {
+            throw error("A branch with that name does not exist.");
+        }
+        log.print(CommitLog.only(head, Transaction.readString(branch)), false);
     }
 
     /**
      * gitlet global-log
      * show all the commit regardless of order
      */
-    public static void globalLog() {
-        List<String> commits = plainFilenamesIn(COMMITS);
-        if (commits != null) {
-            for (String sha1 : commits) {
-                Commit commit = Commit.getCommit(sha1);
-                commit.printCommit();
-            }
+    public static void globalLog(String[] options) {
+        CommitLog log = CommitLog.of(options);
+        if (log.excluded() != null) {
+            throw error("Incorrect operands.");
         }
+        log.print(CommitLog.all(), false);
     }
 
     /**
@@ -199,20 +246,23 @@ public class Repository {
      * show the information of a commit with given message
      */
     public static void find(String message) {
-        List<String> commits = plainFilenamesIn(COMMITS);
-        boolean found = false;
-        if (commits != null) {
-            for (String sha1 : commits) {
-                Commit commit = Commit.getCommit(sha1);
-                if (commit.getMessage().equals(message)) {
-                    System.out.println(commit.getSha1());
-                    found = true;
-                }
-            }
+        printIds(MessageIndex.find(message));
+    }
+
+    /**
+     * gitlet find --contains [text]
+     * print the ids of all commits whose message contains the text
+     */
+    public static void findContaining(String text) {
+        printIds(MessageIndex.findContaining(text));
+    }
+
+    private static void printIds(List<String> ids) {
+        if (ids.isEmpty()) {
+            throw error("Found no commit with that message.");
         }
-        if (!found) {
-            System.out.print("Found no commit with that message.");
-            System.exit(0);
+        for (String id : ids) {
+            System.out.println(id);
         }
     }
 
@@ -221,11 +271,91 @@ public class Repository {
      * show current file status
      */
     public static void status() {
+        Commit head = Commit.getCurCommit();
+        FileTracker addition = FileTracker.read(ADDITION);
+        FileTracker removal = FileTracker.read(REMOVAL);
+        List<String> files = WorkingTree.files();
+        Set<String> workingDir = workingFiles(files, head, addition);
         showBranches();
-        showStagedFiles();
-        showRemovedFiles();
-        showModifications();
-        showUntrackedFiles();
+        showStagedFiles(addition);
+        showRemovedFiles(removal);
+        showModifications(head, addition, removal, workingDir);
+        showUntrackedFiles(getUntrackedFiles(head, addition, removal, files));
+    }
+
+    /**
+     * 1. gitlet diff
+     * show the changes of the working directory to the staged files
+     * 2. gitlet diff [commitID]
+     * show the changes of the working directory to the given commit
+     * 3. gitlet diff [commitID] [commitID]
+     * show the changes from the first commit to the second one
+     * files with the same blob on both sides are never read
+     */
+    public static void diff(String[] commits) {
+        if (commits.length == 2) {
+            Commit from = Commit.getCommit(commits[0]);
+            Commit to = Commit.getCommit(commits[1]);
+            for (String file : new TreeSet<>(Tree.diff(from.getTree(), to.getTree()))) {
+                printDiff(file, from.getFileContentSha1(file), to.getFileContentSha1(file), null);
+            }
+            return;
+        }
+        Map<String, String> staged = stagedFiles();
+        Map<String, String> from = commits.length == 1
+                ? Commit.getCommit(commits[0]).getTrackedFiles() : staged;
+        Set<String> files = new TreeSet<>(from.keySet());
+        files.addAll(staged.keySet());
+        for (String file : files) {
+            File workingFile = join(CWD, file);
+            String sha1 = workingFile.isFile() ? Index.sha1(workingFile) : "";
+            printDiff(file, from.getOrDefault(file, ""), sha1, workingFile);
+        }
+    }
+
+    /**
+     * print the diff of FILE from blob OLD to blob NOW, or to the working
+     * file WORKINGFILE if it is not null. "" is a missing file
+     */
+    private static void printDiff(String file, String old, String now, File workingFile) {
+        if (old.equals(now)) {
+            return;
+        }
+        byte[] nowBytes = now.equals("") ? null
+                : workingFile != null ? readContents(workingFile) : blobBytes(now);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UnifiedDiff.write(file, old.equals("") ? null : blobBytes(old), nowBytes, out);
+        System.out.write(out.toByteArray(), 0, out.size());
+        System.out.flush();
+    }
+
+    /**
+     * gitlet gc [--report]
+     * pack every object reachable from a branch or the stage into a single
+     * pack file and delete all others. --report prints what was reclaimed
+     */
+    public static void gc(boolean report) {
+        long start = System.nanoTime();
+        long before = ObjectStore.storedBytes();
+        Reachability live = Reachability.mark();
+        long marked = System.nanoTime();
+        int removed = ObjectStore.gc(live);
+        if (removed > 0) {
+            //the indexes of commits list deleted commits too
+            CommitIndex.rebuild();
+            CommitGraph.GRAPH.delete();
+            CommitGraph.reset();
+            CommitGraph.get();
+            MessageIndex.rebuild();
+            LruCache.clearAll();
+        }
+        CommitBitmaps.writeHeads();
+        if (report) {
+            long end = System.nanoTime();
+            System.out.printf("Removed %d unreachable objects; objects took %d bytes, "
+                    + "now %d bytes. %d ms (marking took %d ms).%n", removed, before,
+                    ObjectStore.storedBytes(), (end - start) / 1000000, (marked - start) / 1000000);
+        }
     }
 
     /**
@@ -254,11 +384,9 @@ public class Repository {
         File branch = join(BRANCH, branchName);
         String head = Commit.getCurCommit().getSha1();
         if (branch.exists()) {
-            System.out.print("A branch with that name already exists.");
-            System.exit(0);
+            throw error("A branch with that name already exists.");
         }
-        createNewFile(branch);
-        writeContents(branch, head);
+        Transaction.write(branch, head);
     }
 
     /**
@@ -268,16 +396,13 @@ public class Repository {
     public static void removeBranch(String branchName) {
         List<String> branches = plainFilenamesIn(BRANCH);
         if (!branches.contains(branchName)) {
-            System.out.print("A branch with that name does not exist.");
-            System.exit(0);
+            throw error("A branch with that name does not exist.");
         }
-        String curBranch = readContentsAsString(CURRENT);
+        String curBranch = Transaction.readString(CURRENT);
         if (curBranch.equals(branchName)) {
-            System.out.print("Cannot remove the current branch.");
-            System.exit(0);
+            throw error("Cannot remove the current branch.");
         }
-        File branchFile = join(BRANCH, branchName);
-        branchFile.delete();
+        Transaction.delete(join(BRANCH, branchName));
     }
 
     /**
@@ -290,12 +415,12 @@ public class Repository {
         uncheckedFileOverwriteBy(commit);
         updateAllFileTo(commit);
         //move the current branch’s head to that commit node
-        String curBranch = readContentsAsString(CURRENT);
+        String curBranch = Transaction.readString(CURRENT);
         File branch = join(BRANCH, curBranch);
-        writeContents(branch, commitID);
+        Transaction.write(branch, commit.getSha1());
         //move head and clear stage
-        writeContents(HEAD, commitID);
-        writeObject(ADDITION, new FileTracker());
+        Transaction.write(HEAD, commit.getSha1());
+        new FileTracker().write(ADDITION);
     }
 
     /**
@@ -303,14 +428,17 @@ public class Repository {
      */
     public static void merge(String branchName) {
         Commit spiltPoint = getSplitPoint(branchName);
+        if (spiltPoint == null) {
+            System.out.print("Current branch fast-forwarded.");
+            return;
+        }
         Commit curCommit = Commit.getCurCommit();
-        Commit otherCommit = Commit.getCommit(readContentsAsString(join(BRANCH, branchName)));
+        Commit otherCommit = Commit.getCommit(Transaction.readString(join(BRANCH, branchName)));
         uncheckedFileOverwriteBy(otherCommit);
 
-        Set<String> files = new HashSet<>();
-        files.addAll(spiltPoint.getFileNames());
-        files.addAll(curCommit.getFileNames());
-        files.addAll(otherCommit.getFileNames());
+        //files changed on neither side are the same in all three commits
+        Set<String> files = Tree.diff(spiltPoint.getTree(), curCommit.getTree());
+        files.addAll(Tree.diff(spiltPoint.getTree(), otherCommit.getTree()));
         for (String file : files) {
             String contentInSpilt = spiltPoint.getFileContentSha1(file);
             String contentInCur = curCommit.getFileContentSha1(file);
@@ -320,35 +448,35 @@ public class Repository {
                 File newFile = join(CWD, file);
                 if (contentInOther.equals("")) {
                     // remove it add to the removal
-                    restrictedDelete(file);
-                    FileTracker removal = readObject(REMOVAL, FileTracker.class);
+                    WorkingTree.delete(file);
+                    FileTracker removal = FileTracker.read(REMOVAL);
                     removal.trackedFiles.put(file, contentInCur);
-                    writeObject(REMOVAL, removal);
+                    removal.write(REMOVAL);
                 } else {
                     // change the CWD and add to the addition
-                    String content = readBlob(contentInOther);
-                    writeContents(newFile, content);
-                    FileTracker addition = readObject(ADDITION, FileTracker.class);
+                    WorkingTree.makeParents(newFile);
+                    ObjectStore.copyBlob(contentInOther, newFile);
+                    FileTracker addition = FileTracker.read(ADDITION);
                     addition.put(newFile);
-                    writeObject(ADDITION, addition);
+                    addition.write(ADDITION);
                 }
             } else if (!contentInSpilt.equals(contentInCur)
                     &&
                     !contentInSpilt.equals(contentInOther)
                     &&
                     !contentInCur.equals(contentInOther)) {
-                dealWithConflict(curCommit, otherCommit, file);
+                mergeFile(spiltPoint, curCommit, otherCommit, file);
             }
         }
         mergedCommit("Merged " + branchName + " into "
                 +
-                readContentsAsString(CURRENT) + ".", otherCommit);
-        //commit("Merged " + branchName + " into " + readContentsAsString(CURRENT) + ".");
+                Transaction.readString(CURRENT) + ".", otherCommit);
+        //commit("Merged " + branchName + " into " + Transaction.readString(CURRENT) + ".");
     }
 
 
     private static void checkoutCurCommit(String fileName) {
-        String commitID = readContentsAsString(HEAD);
+        String commitID = Transaction.readString(HEAD);
         checkoutCommit(commitID, fileName);
     }
 
@@ -357,29 +485,27 @@ public class Repository {
      */
     private static void checkoutBranch(String branchName) {
         List<String> branches = plainFilenamesIn(BRANCH);
-        String curBranch = readContentsAsString(CURRENT);
+        String curBranch = Transaction.readString(CURRENT);
         if (!branches.contains(branchName)) {
-            System.out.print("No such branch exists.");
-            System.exit(0);
+            throw error("No such branch exists.");
         }
 
         if (curBranch.equals(branchName)) {
-            System.out.print("No need to checkout the current branch.");
-            System.exit(0);
+            throw error("No need to checkout the current branch.");
         }
 
         File branchFile = join(BRANCH, branchName);
-        String commitID = readContentsAsString(branchFile);
+        String commitID = Transaction.readString(branchFile);
         Commit branchHead = Commit.getCommit(commitID);
 
         uncheckedFileOverwriteBy(branchHead);
         updateAllFileTo(branchHead);
 
         //clear the stage
-        writeObject(ADDITION, new FileTracker());
+        new FileTracker().write(ADDITION);
         //update head and current branch
-        writeContents(HEAD, commitID);
-        writeContents(CURRENT, branchName);
+        Transaction.write(HEAD, commitID);
+        Transaction.write(CURRENT, branchName);
     }
 
     /**
@@ -387,16 +513,16 @@ public class Repository {
      */
     private static void checkoutCommit(String commitID, String filename) {
         Commit commit = Commit.getCommit(commitID);
-        Map<String, String> files = commit.trackedFiles;
+        filename = WorkingTree.normalize(filename, "File does not exist in that commit.");
+        Map<String, String> files = commit.getTrackedFiles();
         if (!files.containsKey(filename)) {
-            System.out.print("File does not exist in that commit.");
-            System.exit(0);
+            throw error("File does not exist in that commit.");
         }
 
         File file = join(CWD, filename);
-        String contents = readBlob(files.get(filename));
-        createNewFile(file);
-        writeContents(file, contents);
+        WorkingTree.makeParents(file);
+        ObjectStore.copyBlob(files.get(filename), file);
+        Index.record(file, files.get(filename));
     }
 
     /**
@@ -415,21 +541,23 @@ public class Repository {
      */
     private static void setupPersistence() {
         if (inGit()) {
-            System.out.print("A Gitlet version-control system already "
+            throw error("A Gitlet version-control system already "
                     +
                     "exists in the current directory.");
-            System.exit(0);
         }
         setupFile(GITLET_DIR, true);
         setupFile(STAGINGAREA, true);
         setupFile(COMMITS, true);
         setupFile(BLOBS, true);
         setupFile(BRANCH, true);
+        setupFile(ObjectStore.PACKS, true);
+        setupFile(ObjectStore.TREES, true);
         setupFile(HEAD, false);
         setupFile(ADDITION, false);
         setupFile(REMOVAL, false);
-        writeObject(ADDITION, new FileTracker());
-        writeObject(REMOVAL, new FileTracker());
+        new FileTracker().write(ADDITION);
+        new FileTracker().write(REMOVAL);
+        writeContents(ObjectCodec.FORMAT, String.valueOf(ObjectCodec.FORMAT_VERSION));
     }
 
     /**
@@ -447,7 +575,7 @@ public class Repository {
      * show branch status
      */
     private static void showBranches() {
-        String current = readContentsAsString(CURRENT);
+        String current = Transaction.readString(CURRENT);
         List<String> files = plainFilenamesIn(BRANCH);
         List<String> branches = new LinkedList<>(files);
         branches.remove(current);
@@ -463,9 +591,8 @@ public class Repository {
      * helper function for gitlet status
      * show addition stage files
      */
-    private static void showStagedFiles() {
-        FileTracker staged = readObject(ADDITION, FileTracker.class);
-        Set<String> files = staged.getFileNames();
+    private static void showStagedFiles(FileTracker staged) {
+        Set<String> files = new TreeSet<>(staged.getFileNames());
         System.out.println("=== Staged Files ===");
         for (String file : files) {
             System.out.println(file);
@@ -477,9 +604,8 @@ public class Repository {
      * helper function for gitlet status
      * show removal stage files
      */
-    private static void showRemovedFiles() {
-        FileTracker staged = readObject(REMOVAL, FileTracker.class);
-        Set<String> files = staged.getFileNames();
+    private static void showRemovedFiles(FileTracker staged) {
+        Set<String> files = new TreeSet<>(staged.getFileNames());
         System.out.println("=== Removed Files ===");
         for (String file : files) {
             System.out.println(file);
@@ -491,8 +617,7 @@ public class Repository {
      * helper function for gitlet status
      * show untracked files in CWD
      */
-    private static void showUntrackedFiles() {
-        Set<String> untrackedFiles = getUntrackedFiles();
+    private static void showUntrackedFiles(Set<String> untrackedFiles) {
         System.out.println("=== Untracked Files ===");
         for (String file : untrackedFiles) {
             System.out.println(file);
@@ -505,10 +630,11 @@ public class Repository {
      * helper function for gitlet status
      * show modifications
      */
-    private static void showModifications() {
+    private static void showModifications(Commit head, FileTracker addition,
+                                          FileTracker removal, Set<String> workingDir) {
         System.out.println("=== Modifications Not Staged For Commit ===");
-        showDeleted();
-        showModified();
+        showDeleted(head, addition, removal, workingDir);
+        showModified(head, addition, workingDir);
         System.out.println();
     }
 
@@ -516,16 +642,14 @@ public class Repository {
      * helper function for showing modifications
      * show modified files in CWD
      */
-    private static void showModified() {
-        Commit commit = Commit.getCurCommit();
-        Map<String, String> trackedFiles = commit.trackedFiles;
-        FileTracker addition = readObject(ADDITION, FileTracker.class);
+    private static void showModified(Commit head, FileTracker addition,
+                                     Set<String> workingDir) {
+        Map<String, String> trackedFiles = head.getTrackedFiles();
         Map<String, String> stagedFiles = addition.trackedFiles;
-        Set<String> modified = new LinkedHashSet<>();
+        Set<String> modified = new TreeSet<>();
         for (String file : trackedFiles.keySet()) {
-            File temp = join(CWD, file);
-            if (temp.exists()) {
-                String content = fileSha1(temp);
+            if (workingDir.contains(file)) {
+                String content = Index.sha1(join(CWD, file));
                 if (differentContent(trackedFiles, file, content)
                         &&
                         differentContent(stagedFiles, file, content)) {
@@ -534,9 +658,8 @@ public class Repository {
             }
         }
         for (String file : stagedFiles.keySet()) {
-            File temp = join(CWD, file);
-            if (temp.exists()) {
-                String content = fileSha1(CWD, file);
+            if (workingDir.contains(file)) {
+                String content = Index.sha1(join(CWD, file));
                 if (differentContent(stagedFiles, file, content)) {
                     modified.add(file);
                 }
@@ -552,15 +675,12 @@ public class Repository {
      * helper function for showing modifications
      * show deleted files in CWD
      */
-    private static void showDeleted() {
-        Commit commit = Commit.getCurCommit();
-        FileTracker addition = readObject(ADDITION, FileTracker.class);
-        FileTracker removal = readObject(REMOVAL, FileTracker.class);
-        List<String> workingDir = plainFilenamesIn(CWD);
-        Set<String> trackedFiles = commit.getFileNames();
+    private static void showDeleted(Commit head, FileTracker addition,
+                                    FileTracker removal, Set<String> workingDir) {
+        Set<String> trackedFiles = head.getFileNames();
         Set<String> stagedFiles = addition.getFileNames();
         Set<String> removedFiles = removal.getFileNames();
-        Set<String> deleted = new LinkedHashSet<>();
+        Set<String> deleted = new TreeSet<>();
         for (String file : stagedFiles) {
             if (!workingDir.contains(file)) {
                 deleted.add(file);
@@ -576,81 +696,157 @@ public class Repository {
         }
     }
 
+    /**
+     * the files of the next commit: the files of the head commit with the
+     * staged additions and without the staged removals
+     */
+    private static Map<String, String> stagedFiles() {
+        Map<String, String> files = new HashMap<>(Commit.getCurCommit().getTrackedFiles());
+        files.putAll(FileTracker.read(ADDITION).trackedFiles);
+        files.keySet().removeAll(FileTracker.read(REMOVAL).getFileNames());
+        return files;
+    }
+
+    /**
+     * the working files: FILES, the files found in the working directory, and
+     * the files tracked in HEAD or staged in ADDITION that exist but are
+     * ignored, since .gitletignore does not apply to tracked files
+     */
+    private static Set<String> workingFiles(List<String> files, Commit head,
+                                            FileTracker addition) {
+        Set<String> workingDir = new HashSet<>(files);
+        Set<String> tracked = new HashSet<>(head.getTrackedFiles().keySet());
+        tracked.addAll(addition.trackedFiles.keySet());
+        for (String file : tracked) {
+            if (!workingDir.contains(file) && join(CWD, file).isFile()) {
+                workingDir.add(file);
+            }
+        }
+        return workingDir;
+    }
+
     /**
      * get all untracked files
      * untracked files: files in CWD but not added or committed
      * include removed files but in CWD
      */
-    private static Set<String> getUntrackedFiles() {
+    private static Set<String> getUntrackedFiles(Commit head, FileTracker addition,
+                                                 FileTracker removal, List<String> files) {
         //untracked files
-        List<String> files = plainFilenamesIn(CWD);
-        Set<String> trackedInCur = Commit.getCurCommit().trackedFiles.keySet();
-        Set<String> trackedFiles = new HashSet<>(trackedInCur);
-        FileTracker addition = readObject(ADDITION, FileTracker.class);
+        Set<String> trackedFiles = new HashSet<>(head.getTrackedFiles().keySet());
         trackedFiles.addAll(addition.trackedFiles.keySet());
 
-        Set<String> untrackedFiles = new LinkedHashSet<>();
+        Set<String> untrackedFiles = new TreeSet<>();
         for (String file : files) {
             if (!trackedFiles.contains(file)) {
                 untrackedFiles.add(file);
             }
         }
         //removed and re-created
-        List<String> removedFiles = plainFilenamesIn(REMOVAL);
-        if (removedFiles != null) {
-            for (String removed : removedFiles) {
-                File temp = join(CWD, removed);
-                if (temp.exists()) {
-                    untrackedFiles.add(removed);
-                }
+        for (String removed : removal.getFileNames()) {
+            File temp = join(CWD, removed);
+            if (temp.exists()) {
+                untrackedFiles.add(removed);
             }
         }
         return untrackedFiles;
     }
 
     /**
-     * a helper function to detect if there are untracked files might be overwritten by checkout
+     * a helper function to detect if there are untracked files might be overwritten by checkout.
+     * only the files of COMMIT and their directories are looked up, so the working
+     * directory is not scanned. in the way of a file of COMMIT are an untracked file
+     * at its path, a directory at its path holding untracked files, and an untracked
+     * file at the path of one of its directories
      */
     private static void uncheckedFileOverwriteBy(Commit commit) {
-        Set<String> uncheckedFiles = getUntrackedFiles();
-        for (String uncheckedFile : uncheckedFiles) {
-            if (commit.getFileNames().contains(uncheckedFile)) {
-                System.out.print("There is an untracked file in the way; "
+        Map<String, String> trackedFiles = Commit.getCurCommit().getTrackedFiles();
+        FileTracker addition = FileTracker.read(ADDITION);
+        FileTracker removal = FileTracker.read(REMOVAL);
+        Predicate<String> untracked = file -> !trackedFiles.containsKey(file)
+                && !addition.trackedFiles.containsKey(file)
+                || removal.trackedFiles.containsKey(file);
+        Set<String> dirs = new HashSet<>();
+        for (String file : commit.getTrackedFiles().keySet()) {
+            File target = join(CWD, file);
+            boolean inTheWay;
+            if (target.isDirectory()) {
+                //empty directories left at the path are removed by makeParents
+                inTheWay = WorkingTree.allFiles(file).stream().anyMatch(untracked);
+            } else {
+                inTheWay = target.exists() && untracked.test(file);
+            }
+            for (int slash = file.indexOf('/'); !inTheWay && slash >= 0;
+                 slash = file.indexOf('/', slash + 1)) {
+                String dir = file.substring(0, slash);
+                if (dirs.add(dir)) {
+                    File parent = join(CWD, dir);
+                    inTheWay = parent.exists() && !parent.isDirectory() && untracked.test(dir);
+                }
+            }
+            if (inTheWay) {
+                throw error("There is an untracked file in the way; "
                         +
                         "delete it, or add and commit it first.");
-                System.exit(0);
             }
         }
     }
 
 
     /**
-     * update files tracked in the current commit to the state of a given commit
+     * update files tracked in the current commit to the state of a given commit.
+     * only files whose blob differs between the two trees are deleted or written,
+     * and the files are written by a pool of CHECKOUT_THREADS threads
      */
     private static void updateAllFileTo(Commit commit) {
         Commit curCommit = Commit.getCurCommit();
-        Map<String, String> trackedFiles = commit.trackedFiles;
-        for (String filename : curCommit.getFileNames()) {
-            File file = join(CWD, filename);
-            restrictedDelete(file);
+        Map<String, String> trackedFiles = commit.getTrackedFiles();
+        Set<String> changed = Tree.diff(curCommit.getTree(), commit.getTree());
+        for (String filename : changed) {
+            if (!trackedFiles.containsKey(filename)) {
+                WorkingTree.delete(filename);
+            }
         }
 
-        for (String filename : trackedFiles.keySet()) {
-            String contents = readBlob(trackedFiles.get(filename));
-            File newFile = join(CWD, filename);
-            createNewFile(newFile);
-            writeContents(newFile, contents);
+        ExecutorService pool = Executors.newFixedThreadPool(CHECKOUT_THREADS);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (Map.Entry<String, String> file : trackedFiles.entrySet()) {
+                boolean unchanged = !changed.contains(file.getKey());
+                writes.add(pool.submit(() ->
+                        checkoutFile(join(CWD, file.getKey()), file.getValue(), unchanged)));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
         }
     }
 
+    /**
+     * write the blob SHA1 to FILE. a file the tree diff found UNCHANGED is
+     * only written if it was modified in the working directory
+     */
+    private static void checkoutFile(File file, String sha1, boolean unchanged) {
+        if (unchanged && file.exists() && Index.sha1(file).equals(sha1)) {
+            return;
+        }
+        WorkingTree.makeParents(file);
+        ObjectStore.copyBlob(sha1, file);
+        Index.record(file, sha1);
+    }
+
     private static void printAddStage() {
-        FileTracker tracker = readObject(ADDITION, FileTracker.class);
+        FileTracker tracker = FileTracker.read(ADDITION);
         System.out.println("------Addition Stage-------");
         System.out.println(tracker.trackedFiles);
     }
 
     private static void printRemoveStage() {
-        FileTracker tracker = readObject(REMOVAL, FileTracker.class);
+        FileTracker tracker = FileTracker.read(REMOVAL);
         System.out.println("-------Removed Stage--------");
         System.out.println(tracker.trackedFiles);
     }
@@ -665,116 +861,87 @@ public class Repository {
      * filename: sha1code of the content
      * file content: content of the file
      */
-    private static void writeBlob(File file) {
-        String sha1 = fileSha1(file);
-        File folder = join(Repository.BLOBS, sha1.substring(0, 2));
-        File blob = join(folder, sha1.substring(2));
-        folder.mkdir();
-        createNewFile(blob);
-        byte[] content = readContents(file);
-        writeContents(blob, content);
-    }
-
-    /**
-     * helper function to read content of a file
-     */
-    private static String readBlob(String sha1) {
-        File blob = join(Repository.BLOBS, sha1.substring(0, 2), sha1.substring(2));
-        if (!blob.exists()) {
-            return "";
+    private static String writeBlob(File file) {
+        String sha1 = Index.cachedSha1(file);
+        if (sha1 != null && ObjectStore.contains(ObjectStore.BLOB, sha1)) {
+            return sha1;
         }
-        return readContentsAsString(blob);
+        return Index.hash(file, f -> ObjectStore.write(ObjectStore.BLOB, f));
     }
 
     /**
-     * find the spiltPoint between the cur branch and the given branch
+     * find the spiltPoint between the cur branch and the given branch.
+     * returns null after fast-forwarding the cur branch to the given branch
      */
     private static Commit getSplitPoint(String branchName) {
-        FileTracker fileTracker = readObject(ADDITION, FileTracker.class);
+        FileTracker fileTracker = FileTracker.read(ADDITION);
         Map<String, String> stage = fileTracker.trackedFiles;
         if (stage.size() != 0) {
-            System.out.print("You have uncommitted changes.");
-            System.exit(0);
+            throw error("You have uncommitted changes.");
         }
 
-        fileTracker = readObject(REMOVAL, FileTracker.class);
+        fileTracker = FileTracker.read(REMOVAL);
         stage = fileTracker.trackedFiles;
         if (stage.size() != 0) {
-            System.out.print("You have uncommitted changes.");
-            System.exit(0);
+            throw error("You have uncommitted changes.");
         }
-        String curBranchName = readContentsAsString(CURRENT);
+        String curBranchName = Transaction.readString(CURRENT);
         if (curBranchName.equals(branchName)) {
-            System.out.print("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw error("Cannot merge a branch with itself.");
         }
-        File branchFile = join(BRANCH, Commit.curBranch());
-        String branchHeadCommitSha1 = readContentsAsString(branchFile);
-        File branchHeadCommitFile = join(COMMITS, branchHeadCommitSha1);
-        Commit head1 = readObject(branchHeadCommitFile, Commit.class);
-
-        branchFile = join(BRANCH, branchName);
+        File branchFile = join(BRANCH, branchName);
         if (!branchFile.exists()) {
-            System.out.print("A branch with that name does not exist.");
-            System.exit(0);
-        }
-        branchHeadCommitSha1 = readContentsAsString(branchFile);
-        branchHeadCommitFile = join(COMMITS, branchHeadCommitSha1);
-        Commit head2 = readObject(branchHeadCommitFile, Commit.class);
-
-        Commit ptr1 = head1, ptr2 = head2;
-        while (!ptr1.equals(ptr2)) {
-            ptr1 = ptr1.getClass().equals(MergedCommit.class)
-                    ?
-                    Commit.getCommit(((MergedCommit) ptr1).getSecondParent())
-                    :
-                    Commit.getCommit(ptr1.getParent());
-            ptr2 = ptr2.getClass().equals(MergedCommit.class)
-                    ?
-                    Commit.getCommit(((MergedCommit) ptr2).getSecondParent())
-                    :
-                    Commit.getCommit(ptr2.getParent());
-            if (ptr1 == null) {
-                ptr1 = head2;
-            }
-            if (ptr2 == null) {
-                ptr2 = head1;
-            }
+            throw error("A branch with that name does not exist.");
         }
-        if (ptr1.equals(head2)) {
-            System.out.print("Given branch is an ancestor of the current branch.");
-            System.exit(0);
+        String head1 = Transaction.readString(join(BRANCH, curBranchName));
+        String head2 = Transaction.readString(branchFile);
+
+        CommitGraph graph = CommitGraph.get(head1, head2);
+        int pos1 = graph.position(head1);
+        int pos2 = graph.position(head2);
+        if (graph.isAncestor(pos2, pos1)) {
+            throw error("Given branch is an ancestor of the current branch.");
         }
-        if (ptr1.equals(head1)) {
+        if (graph.isAncestor(pos1, pos2)) {
             checkoutBranch(branchName);
-            System.out.print("Current branch fast-forwarded.");
-            System.exit(0);
+            return null;
         }
-        return ptr1;
+        return Commit.getCommit(graph.id(graph.mergeBase(pos1, pos2)));
     }
 
     /**
-     * deal with conflict when merging
+     * merge the versions of FILENAME changed differently in CUR and OTHER
+     * since SPLIT line by line, and stage the result.
+     * a deleted version is empty, so it conflicts with every changed line
      */
-    private static void dealWithConflict(Commit cur, Commit other, String filename) {
-        System.out.print("Encountered a merge conflict.");
-        String curFileContentSha1 = cur.getFileContentSha1(filename);
-        String otherFileContentSha1 = other.getFileContentSha1(filename);
-
-        String contentInCur = curFileContentSha1.equals("")
-                ?
-                "" : readBlob(curFileContentSha1);
-        String contentInOther = otherFileContentSha1.equals("")
-                ?
-                "" : readBlob(otherFileContentSha1);
+    private static void mergeFile(Commit split, Commit cur, Commit other, String filename) {
+        LineMerge.Result merged = LineMerge.merge(blobBytes(split.getFileContentSha1(filename)),
+                blobBytes(cur.getFileContentSha1(filename)),
+                blobBytes(other.getFileContentSha1(filename)));
+        if (merged.conflict) {
+            System.out.print("Encountered a merge conflict.");
+        }
         File newVersion = join(CWD, filename);
+        WorkingTree.makeParents(newVersion);
+        writeContents(newVersion, merged.content);
 
-        writeContents(newVersion, "<<<<<<< HEAD\n" + contentInCur
-                +
-                "=======\n" + contentInOther + ">>>>>>>\n");
+        //the merged content is new, so it has to be stored before it is staged
+        FileTracker addition = FileTracker.read(ADDITION);
+        addition.trackedFiles.put(WorkingTree.path(newVersion), writeBlob(newVersion));
+        addition.write(ADDITION);
+    }
 
-        FileTracker addition = readObject(ADDITION, FileTracker.class);
-        addition.put(newVersion);
-        writeObject(ADDITION, addition);
+    /**
+     * the content of the blob SHA1, empty for "" (no file)
+     */
+    private static byte[] blobBytes(String sha1) {
+        if (sha1.equals("")) {
+            return new byte[0];
+        }
+        byte[] blob = ObjectStore.read(ObjectStore.BLOB, sha1);
+        if (blob == null) {
+            throw new IllegalArgumentException("missing blob " + sha1);
+        }
+        return blob;
     }
 }
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares Java serialization with ObjectCodec for commits and staging areas:
+ * bytes per object and encode/decode throughput.
+ * The serialized objects are the LegacyFormat mirrors, which have the same
+ * fields as the classes gitlet used to serialize.
+ * usage: java gitlet.SerializationBenchmark [commits] [staged files]
+ *
+ * @author winter
+ */
+public class SerializationBenchmark {
+    private static final int ROUNDS = 5;
+    /** staging areas are single large objects, so they need more rounds to warm up */
+    private static final int STAGE_ROUNDS = 50;
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int commits = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int staged = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        Random random = new Random(61);
+
+        Commit[] current = new Commit[commits];
+        LegacyFormat.TreeCommit[] legacy = new LegacyFormat.TreeCommit[commits];
+        String parent = null;
+        for (int i = 0; i < commits; i++) {
+            String tree = randomId(random);
+            String message = "commit number " + i;
+            String time = "Sat Oct 17 17:56:21 2026 +0000";
+            LegacyFormat.TreeCommit old;
+            if (i % 10 == 9) {
+                String second = randomId(random);
+                current[i] = new MergedCommit(message, time, parent, second, tree);
+                LegacyFormat.TreeMergedCommit merged = new LegacyFormat.TreeMergedCommit();
+                merged.secondParent = second;
+                old = merged;
+            } else {
+                current[i] = new Commit(message, time, parent, tree);
+                old = new LegacyFormat.TreeCommit();
+            }
+            old.author = "Winter";
+            old.message = message;
+            old.time = time;
+            old.parent = parent;
+            old.tree = tree;
+            legacy[i] = old;
+            parent = current[i].getSha1();
+        }
+
+        Map<String, String> files = new HashMap<>();
+        for (int i = 0; i < staged; i++) {
+            files.put("src/file" + i + ".java", randomId(random));
+        }
+        FileTracker stage = new FileTracker(files);
+        LegacyFormat.Tracker legacyStage = new LegacyFormat.Tracker();
+        legacyStage.trackedFiles = files;
+
+        System.out.printf("%-14s %-14s %12s %14s %14s%n",
+                "object", "format", "bytes each", "encode ops/s", "decode ops/s");
+        reportCommits(current, legacy);
+        reportStage(stage, legacyStage);
+    }
+
+    private static void reportCommits(Commit[] current, LegacyFormat.TreeCommit[] legacy)
+            throws IOException, ClassNotFoundException {
+        long bytes = 0;
+        long encode = Long.MAX_VALUE;
+        long decode = Long.MAX_VALUE;
+        byte[][] encoded = new byte[current.length][];
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < current.length; i++) {
+                encoded[i] = ObjectCodec.encode(current[i]);
+            }
+            encode = Math.min(encode, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (byte[] commit : encoded) {
+                ObjectCodec.decodeCommit(commit);
+            }
+            decode = Math.min(decode, System.nanoTime() - start);
+        }
+        for (byte[] commit : encoded) {
+            bytes += commit.length;
+        }
+        report("commit", "gitlet", bytes, current.length, encode, decode);
+
+        bytes = 0;
+        encode = Long.MAX_VALUE;
+        decode = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < legacy.length; i++) {
+                encoded[i] = serialize(legacy[i]);
+            }
+            encode = Math.min(encode, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (byte[] commit : encoded) {
+                deserialize(commit);
+            }
+            decode = Math.min(decode, System.nanoTime() - start);
+        }
+        for (byte[] commit : encoded) {
+            bytes += commit.length;
+        }
+        report("commit", "java", bytes, legacy.length, encode, decode);
+    }
+
+    private static void reportStage(FileTracker stage, LegacyFormat.Tracker legacy)
+            throws IOException, ClassNotFoundException {
+        long encode = Long.MAX_VALUE;
+        long decode = Long.MAX_VALUE;
+        byte[] encoded = null;
+        for (int r = 0; r < STAGE_ROUNDS; r++) {
+            long start = System.nanoTime();
+            encoded = ObjectCodec.encode(stage);
+            encode = Math.min(encode, System.nanoTime() - start);
+            start = System.nanoTime();
+            ObjectCodec.decodeTracker(encoded);
+            decode = Math.min(decode, System.nanoTime() - start);
+        }
+        report("staging area", "gitlet", encoded.length, 1, encode, decode);
+
+        encode = Long.MAX_VALUE;
+        decode = Long.MAX_VALUE;
+        for (int r = 0; r < STAGE_ROUNDS; r++) {
+            long start = System.nanoTime();
+            encoded = serialize(legacy);
+            encode = Math.min(encode, System.nanoTime() - start);
+            start = System.nanoTime();
+            deserialize(encoded);
+            decode = Math.min(decode, System.nanoTime() - start);
+        }
+        report("staging area", "java", encoded.length, 1, encode, decode);
+    }
+
+    private static void report(String object, String format, long bytes, int count,
+                               long encodeNanos, long decodeNanos) {
+        System.out.printf("%-14s %-14s %12d %14.0f %14.0f%n", object, format, bytes / count,
+                count / (encodeNanos / 1e9), count / (decodeNanos / 1e9));
+    }
+
+    private static byte[] serialize(Serializable obj) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(obj);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private static String randomId(Random random) {
+        byte[] raw = new byte[20];
+        random.nextBytes(raw);
+        return Utils.toHex(raw, 0);
+    }
+}
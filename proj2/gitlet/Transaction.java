@@ -0,0 +1,293 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/**
+ * Groups the updates of refs (HEAD, CURRENT, branches) and staging areas
+ * made by one command, so they take effect together or not at all.
+ * Updates are kept in memory until commit, and reads see them. commit
+ * syncs the objects the command wrote, so no update can name an object
+ * lost in a crash, then writes the journal with a single fsync and renames
+ * each updated file into place without syncing it.
+ *
+ * The journal holds the latest contents of every ref and staging area any
+ * command updated, not only those of the last command, so the renamed
+ * files never have to be durable themselves: after a crash, recover
+ * rewrites every file that differs from the journal. There are two
+ * journal files, and commit overwrites the older one in place, so a
+ * journal torn by a crash leaves the other one intact, and no fsync of
+ * .gitlet is needed once both exist.
+ * journal: "GJNL" | sequence | count | entries (path in .gitlet, length or
+ * -1 for a deleted file, content) | CRC32 of everything before it
+ *
+ * @author winter
+ */
+class Transaction {
+    /**
+     * The two journals: CWD/.gitlet/journal-0 and CWD/.gitlet/journal-1
+     */
+    static final File[] JOURNALS = {join(Repository.GITLET_DIR, "journal-0"),
+        join(Repository.GITLET_DIR, "journal-1")};
+
+    private static final int MAGIC = 0x474a4e4c;
+    /** the journal of gitlets before the two journals, deleted once it is applied */
+    private static final File OLD_JOURNAL = join(Repository.GITLET_DIR, "journal");
+    private static final File OLD_JOURNAL_TEMP = join(Repository.GITLET_DIR, "journal.tmp");
+
+    /**
+     * the pending contents of each updated file, null for a deleted file
+     */
+    private static final Map<File, byte[]> PENDING = new LinkedHashMap<>();
+
+    /**
+     * A journal read back: which of the two it is, its sequence number
+     * and the contents it records.
+     */
+    private static class Journal {
+        final int slot;
+        final long sequence;
+        final Map<File, byte[]> updates;
+
+        Journal(int slot, long sequence, Map<File, byte[]> updates) {
+            this.slot = slot;
+            this.sequence = sequence;
+            this.updates = updates;
+        }
+    }
+
+    /**
+     * replace the contents of FILE with CONTENTS (Strings or byte arrays) on commit
+     */
+    static synchronized void write(File file, Object... contents) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Object obj : contents) {
+            byte[] b = obj instanceof byte[]
+                    ? (byte[]) obj : ((String) obj).getBytes(StandardCharsets.UTF_8);
+            bytes.write(b, 0, b.length);
+        }
+        PENDING.put(file, bytes.toByteArray());
+    }
+
+    /**
+     * delete FILE on commit
+     */
+    static synchronized void delete(File file) {
+        PENDING.put(file, null);
+    }
+
+    /**
+     * the contents of FILE, including the updates of this command
+     */
+    static synchronized byte[] read(File file) {
+        if (PENDING.containsKey(file)) {
+            byte[] contents = PENDING.get(file);
+            if (contents == null) {
+                throw new IllegalArgumentException("must be a normal file");
+            }
+            return contents;
+        }
+        return readContents(file);
+    }
+
+    static String readString(File file) {
+        return new String(read(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * make the updates of this command durable and apply them
+     */
+    static synchronized void commit() {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+        ObjectStore.sync();
+        Journal last = newestJournal();
+        Map<File, byte[]> state = last == null ? new LinkedHashMap<>() : last.updates;
+        state.putAll(PENDING);
+        File journal = JOURNALS[last == null ? 0 : 1 - last.slot];
+        boolean created = !journal.exists();
+        ByteBuffer bytes = ByteBuffer.wrap(encode(last == null ? 1 : last.sequence + 1, state));
+        try (FileChannel channel = FileChannel.open(journal.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (created) {
+            fsync(Repository.GITLET_DIR);
+        }
+        apply(PENDING);
+        PENDING.clear();
+    }
+
+    /**
+     * drop the updates of a command that failed
+     */
+    static synchronized void abort() {
+        PENDING.clear();
+    }
+
+    /**
+     * check if a crash left files that differ from the journal, which
+     * only recover, holding the repository exclusively, may fix
+     */
+    static boolean needsRecovery() {
+        if (OLD_JOURNAL.exists()) {
+            return true;
+        }
+        Journal last = newestJournal();
+        return last != null && !stale(last.updates).isEmpty();
+    }
+
+    /**
+     * rewrite every file that differs from the journal, e.g. because a
+     * crash lost its rename
+     */
+    static synchronized void recover() {
+        OLD_JOURNAL_TEMP.delete();
+        if (OLD_JOURNAL.exists()) {
+            Journal old = readJournal(-1, readContents(OLD_JOURNAL));
+            if (old != null) {
+                apply(old.updates);
+            }
+            OLD_JOURNAL.delete();
+        }
+        Journal last = newestJournal();
+        if (last != null) {
+            apply(stale(last.updates));
+        }
+    }
+
+    /**
+     * the updates in UPDATES whose files do not have those contents
+     */
+    private static Map<File, byte[]> stale(Map<File, byte[]> updates) {
+        Map<File, byte[]> stale = new LinkedHashMap<>();
+        for (Map.Entry<File, byte[]> update : updates.entrySet()) {
+            File file = update.getKey();
+            byte[] contents = update.getValue();
+            boolean current = contents == null ? !file.exists()
+                    : file.isFile() && Arrays.equals(readContents(file), contents);
+            if (!current) {
+                stale.put(file, contents);
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * the complete journal with the largest sequence number, or null if there is none
+     */
+    private static Journal newestJournal() {
+        Journal newest = null;
+        for (int slot = 0; slot < JOURNALS.length; slot++) {
+            if (!JOURNALS[slot].exists()) {
+                continue;
+            }
+            Journal journal = readJournal(slot, readContents(JOURNALS[slot]));
+            if (journal != null && (newest == null || journal.sequence > newest.sequence)) {
+                newest = journal;
+            }
+        }
+        return newest;
+    }
+
+    private static byte[] encode(long sequence, Map<File, byte[]> updates) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(updates.size());
+            for (Map.Entry<File, byte[]> entry : updates.entrySet()) {
+                out.writeUTF(Repository.GITLET_DIR.toPath()
+                        .relativize(entry.getKey().toPath()).toString());
+                byte[] contents = entry.getValue();
+                out.writeInt(contents == null ? -1 : contents.length);
+                if (contents != null) {
+                    out.write(contents);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        ByteBuffer journal = ByteBuffer.allocate(bytes.size() + 8);
+        journal.put(bytes.toByteArray()).putLong(crc.getValue());
+        return journal.array();
+    }
+
+    /**
+     * the journal SLOT with the content CONTENT, or null if it is incomplete.
+     * slot -1 is the journal of older gitlets, which has no sequence number
+     */
+    private static Journal readJournal(int slot, byte[] content) {
+        if (content.length < 16) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        if (ByteBuffer.wrap(content, content.length - 8, 8).getLong() != crc.getValue()) {
+            return null;
+        }
+        Map<File, byte[]> updates = new LinkedHashMap<>();
+        long sequence = 0;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                Arrays.copyOf(content, content.length - 8)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            if (slot >= 0) {
+                sequence = in.readLong();
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                File file = join(Repository.GITLET_DIR, in.readUTF());
+                int length = in.readInt();
+                byte[] contents = null;
+                if (length >= 0) {
+                    contents = new byte[length];
+                    in.readFully(contents);
+                }
+                updates.put(file, contents);
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return new Journal(slot, sequence, updates);
+    }
+
+    /**
+     * write every update in UPDATES through a temporary file renamed into
+     * place. nothing is synced: the journal already holds the updates
+     */
+    private static void apply(Map<File, byte[]> updates) {
+        for (Map.Entry<File, byte[]> update : updates.entrySet()) {
+            File file = update.getKey();
+            if (update.getValue() == null) {
+                file.delete();
+                continue;
+            }
+            writeContentsAtomically(file, update.getValue());
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+import static gitlet.Utils.*;
+
+/**
+ * A content-addressed directory listing.
+ * A tree maps each name to a blob, or to another tree for a directory;
+ * its sha1Code is the hash of its encoding, so two commits that share a
+ * directory share its tree object, and comparing two tree ids tells
+ * whether anything below them differs.
+ * encoding: count | entries sorted by name (type, name, sha1Code as 20 raw bytes)
+ *
+ * @author winter
+ */
+class Tree {
+    static final byte BLOB = 1;
+    static final byte TREE = 2;
+
+    /** the id of the tree without entries */
+    static final String EMPTY = sha1(encode(new TreeMap<>()));
+
+    /**
+     * the files below recently read or written root trees
+     */
+    private static final LruCache<String, Map<String, String>> CACHE =
+            new LruCache<>("trees", 16 << 20, files -> 64 + 160L * files.size());
+
+    /**
+     * One entry of a tree.
+     */
+    private static class Entry {
+        final byte type;
+        final String id;
+
+        Entry(byte type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+    }
+
+    /**
+     * write the trees for FILES, a map from paths ("dir/file") to blob
+     * ids, and return the id of the root tree. trees that already exist are
+     * not written again
+     */
+    static String write(Map<String, String> files) {
+        String id = writeTree(files);
+        CACHE.put(id, Collections.unmodifiableMap(new HashMap<>(files)));
+        return id;
+    }
+
+    private static String writeTree(Map<String, String> files) {
+        Map<String, Entry> entries = new TreeMap<>();
+        Map<String, Map<String, String>> subdirs = new TreeMap<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            String path = file.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                entries.put(path, new Entry(BLOB, file.getValue()));
+            } else {
+                subdirs.computeIfAbsent(path.substring(0, slash), k -> new HashMap<>())
+                        .put(path.substring(slash + 1), file.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> subdir : subdirs.entrySet()) {
+            entries.put(subdir.getKey(), new Entry(TREE, writeTree(subdir.getValue())));
+        }
+        byte[] content = encode(entries);
+        String id = sha1(content);
+        if (!ObjectStore.contains(ObjectStore.TREE, id)) {
+            ObjectStore.write(ObjectStore.TREE, id, content);
+        }
+        return id;
+    }
+
+    /**
+     * all files below the tree ID, as an unmodifiable map from paths to blob ids
+     */
+    static Map<String, String> read(String id) {
+        Map<String, String> files = CACHE.get(id);
+        if (files == null) {
+            files = new HashMap<>();
+            collect(id, "", files);
+            files = Collections.unmodifiableMap(files);
+            CACHE.put(id, files);
+        }
+        return files;
+    }
+
+    /**
+     * the paths whose blob differs between the trees A and B, including
+     * paths that exist in only one of them. subtrees with the same id on
+     * both sides are skipped without being read
+     */
+    static Set<String> diff(String a, String b) {
+        Set<String> changed = new TreeSet<>();
+        diff(a, b, "", changed);
+        return changed;
+    }
+
+    private static void diff(String a, String b, String prefix, Set<String> changed) {
+        if (a.equals(b)) {
+            return;
+        }
+        Map<String, Entry> left = entries(a);
+        Map<String, Entry> right = entries(b);
+        Set<String> names = new TreeSet<>(left.keySet());
+        names.addAll(right.keySet());
+        for (String name : names) {
+            Entry l = left.get(name);
+            Entry r = right.get(name);
+            String path = prefix + name;
+            if (l != null && r != null && l.id.equals(r.id) && l.type == r.type) {
+                continue;
+            }
+            if (l != null && l.type == TREE && r != null && r.type == TREE) {
+                diff(l.id, r.id, path + "/", changed);
+                continue;
+            }
+            for (Entry side : new Entry[]{l, r}) {
+                if (side == null) {
+                    continue;
+                }
+                if (side.type == TREE) {
+                    Map<String, String> files = new HashMap<>();
+                    collect(side.id, path + "/", files);
+                    changed.addAll(files.keySet());
+                } else {
+                    changed.add(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * call VISITOR with (true, subtree id) or (false, blob id) for every entry of the tree ID
+     */
+    static void forEachEntry(String id, BiConsumer<Boolean, String> visitor) {
+        for (Entry entry : entries(id).values()) {
+            visitor.accept(entry.type == TREE, entry.id);
+        }
+    }
+
+    private static void collect(String id, String prefix, Map<String, String> files) {
+        for (Map.Entry<String, Entry> entry : entries(id).entrySet()) {
+            Entry e = entry.getValue();
+            if (e.type == TREE) {
+                collect(e.id, prefix + entry.getKey() + "/", files);
+            } else {
+                files.put(prefix + entry.getKey(), e.id);
+            }
+        }
+    }
+
+    private static Map<String, Entry> entries(String id) {
+        Map<String, Entry> entries = new TreeMap<>();
+        if (id.equals(EMPTY)) {
+            return entries;
+        }
+        byte[] content = ObjectStore.read(ObjectStore.TREE, id);
+        if (content == null) {
+            throw error("Missing tree %s.", id);
+        }
+        long start = Profile.start();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            int count = in.readInt();
+            byte[] raw = new byte[20];
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                String name = in.readUTF();
+                in.readFully(raw);
+                entries.put(name, new Entry(type, toHex(raw, 0)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Profile.record(Profile.DECODE, start, content.length);
+        return entries;
+    }
+
+    private static byte[] encode(Map<String, Entry> entries) {
+        long start = Profile.start();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeByte(entry.getValue().type);
+                out.writeUTF(entry.getKey());
+                out.write(toRaw(entry.getValue().id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Profile.record(Profile.ENCODE, start, bytes.size());
+        return bytes.toByteArray();
+    }
+}
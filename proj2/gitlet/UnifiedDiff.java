@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Diffs of files in the unified format of git diff: a header naming the
+ * file, then hunks of changed lines with CONTEXT unchanged lines around
+ * them. "@@ -s,l +s,l @@" gives the first line and the number of lines of
+ * a hunk in the old and the new version; removed lines start with '-',
+ * added lines with '+', and unchanged lines with a space.
+ * The lines are diffed by LineDiff with its histogram heuristic.
+ *
+ * @author winter
+ */
+class UnifiedDiff {
+    /**
+     * The number of unchanged lines shown around changed lines.
+     */
+    static final int CONTEXT = 3;
+
+    private static final byte[] NO_NEWLINE =
+            "\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * write the diff of the file NAME from OLD to NEW to OUT.
+     * a missing version is null
+     */
+    static void write(String name, byte[] old, byte[] now, ByteArrayOutputStream out) {
+        print(out, "diff --git a/%s b/%s\n", name, name);
+        if (old == null) {
+            print(out, "new file\n");
+        } else if (now == null) {
+            print(out, "deleted file\n");
+        }
+        byte[] a = old == null ? new byte[0] : old;
+        byte[] b = now == null ? new byte[0] : now;
+        if (isBinary(a) || isBinary(b)) {
+            print(out, "Binary files %s and %s differ\n",
+                    old == null ? "/dev/null" : "a/" + name, now == null ? "/dev/null" : "b/" + name);
+            return;
+        }
+        print(out, "--- %s\n", old == null ? "/dev/null" : "a/" + name);
+        print(out, "+++ %s\n", now == null ? "/dev/null" : "b/" + name);
+
+        LineDiff.Lines from = LineDiff.split(a);
+        LineDiff.Lines to = LineDiff.split(b);
+        int[][] numbers = LineDiff.number(from, to);
+        List<int[]> changes = changes(LineDiff.matches(numbers[0], numbers[1], true),
+                from.size(), to.size());
+        int first = 0;
+        while (first < changes.size()) {
+            //changes with few enough unchanged lines between them share a hunk
+            int last = first;
+            while (last + 1 < changes.size()
+                    && changes.get(last + 1)[0] - changes.get(last)[1] <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int[] start = changes.get(first);
+            int[] end = changes.get(last);
+            int aStart = Math.max(0, start[0] - CONTEXT);
+            int bStart = start[2] - (start[0] - aStart);
+            int aEnd = Math.min(from.size(), end[1] + CONTEXT);
+            int bEnd = end[3] + (aEnd - end[1]);
+            print(out, "@@ -%s +%s @@\n", range(aStart, aEnd), range(bStart, bEnd));
+            int line = aStart;
+            for (int i = first; i <= last; i++) {
+                int[] change = changes.get(i);
+                writeLines(out, ' ', from, line, change[0]);
+                writeLines(out, '-', from, change[0], change[1]);
+                writeLines(out, '+', to, change[2], change[3]);
+                line = change[1];
+            }
+            writeLines(out, ' ', from, line, aEnd);
+            first = last + 1;
+        }
+    }
+
+    /**
+     * the changes {aFrom, aTo, bFrom, bTo} between the matching BLOCKS of
+     * two versions with ASIZE and BSIZE lines: lines aFrom to aTo were
+     * replaced by lines bFrom to bTo
+     */
+    private static List<int[]> changes(List<int[]> blocks, int aSize, int bSize) {
+        List<int[]> changes = new ArrayList<>();
+        int a = 0;
+        int b = 0;
+        blocks.add(new int[]{aSize, bSize, 0});
+        for (int[] block : blocks) {
+            if (block[0] > a || block[1] > b) {
+                changes.add(new int[]{a, block[0], b, block[1]});
+            }
+            a = block[0] + block[2];
+            b = block[1] + block[2];
+        }
+        return changes;
+    }
+
+    /**
+     * the range of the lines FROM to TO of a hunk header: the first line,
+     * counting from 1, and the number of lines unless it is 1.
+     * an empty range starts at the line before it
+     */
+    private static String range(int from, int to) {
+        int length = to - from;
+        if (length == 1) {
+            return String.valueOf(from + 1);
+        }
+        return (length == 0 ? from : from + 1) + "," + length;
+    }
+
+    /**
+     * write the lines FROM to TO of TEXT to OUT, each after PREFIX
+     */
+    private static void writeLines(ByteArrayOutputStream out, char prefix,
+                                   LineDiff.Lines text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out.write(prefix);
+            out.write(text.bytes, text.start(i), text.length(i));
+            if (text.bytes[text.start(i) + text.length(i) - 1] != '\n') {
+                out.writeBytes(NO_NEWLINE);
+            }
+        }
+    }
+
+    /**
+     * whether CONTENT is binary, like git: it has a zero byte in its first 8000 bytes
+     */
+    private static boolean isBinary(byte[] content) {
+        for (int i = 0; i < Math.min(content.length, 8000); i++) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void print(ByteArrayOutputStream out, String format, Object... args) {
+        out.writeBytes(String.format(format, args).getBytes(StandardCharsets.UTF_8));
+    }
+}
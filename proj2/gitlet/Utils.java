@@ -9,8 +9,12 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -36,13 +40,18 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        long start = Profile.start();
+        long bytes = 0;
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    bytes += ((byte[]) val).length;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] utf8 = ((String) val).getBytes(StandardCharsets.UTF_8);
+                    md.update(utf8);
+                    bytes += utf8.length;
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
@@ -51,6 +60,7 @@ class Utils {
             for (byte b : md.digest()) {
                 result.format("%02x", b);
             }
+            Profile.record(Profile.SHA1, start, bytes);
             return result.toString();
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
@@ -63,6 +73,28 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the 20 raw bytes of the hexadecimal SHA-1 UID ID. */
+    static byte[] toRaw(String id) {
+        byte[] raw = new byte[UID_LENGTH / 2];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) (Character.digit(id.charAt(2 * i), 16) << 4
+                    | Character.digit(id.charAt(2 * i + 1), 16));
+        }
+        return raw;
+    }
+
+    /** Returns the hexadecimal SHA-1 UID held in the 20 bytes of RAW
+     *  starting at OFFSET. */
+    static String toHex(byte[] raw, int offset) {
+        char[] hex = new char[UID_LENGTH];
+        for (int i = 0; i < UID_LENGTH / 2; i++) {
+            int b = raw[offset + i] & 0xff;
+            hex[2 * i] = Character.forDigit(b >>> 4, 16);
+            hex[2 * i + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -97,8 +129,11 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        long start = Profile.start();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Profile.record(Profile.READ_CONTENTS, start, contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -116,6 +151,8 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Profile.start();
+        long bytes = 0;
         try {
             if (file.isDirectory()) {
                 throw
@@ -124,27 +161,67 @@ class Utils {
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] data = obj instanceof byte[]
+                        ? (byte[]) obj : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(data);
+                bytes += data.length;
             }
             str.close();
+            Profile.record(Profile.WRITE_CONTENTS, start, bytes);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Return a temporary file next to FILE, unique to this process and
+     *  thread, since commands holding a shared lock may write the same file
+     *  at once. */
+    static File tempFileFor(File file) {
+        return new File(file.getParentFile(), file.getName() + "." + ProcessHandle.current().pid()
+                + "." + Thread.currentThread().getId() + ".tmp");
+    }
+
+    /** Write CONTENTS to FILE like writeContents, but through a temporary
+     *  file that is renamed over FILE, so readers see either the old or the
+     *  new contents and never a partial write. */
+    static void writeContentsAtomically(File file, Object... contents) {
+        File temp = tempFileFor(file);
+        writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Flush FILE, a file or a directory, to the disk, so it survives a
+     *  crash. A directory is synced to make the names created, renamed or
+     *  deleted in it durable; where a directory cannot be opened, as on
+     *  Windows, that is left to the file system. */
+    static void fsync(File file) {
+        boolean directory = file.isDirectory();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!directory) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Profile.start();
         try {
             ObjectInputStream in =
                     new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Profile.record(Profile.READ_OBJECT, start, file.length());
             return result;
         } catch (IOException | ClassCastException
                 | ClassNotFoundException excp) {
@@ -156,7 +233,10 @@ class Utils {
      * Write OBJ to FILE.
      */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        long start = Profile.start();
+        byte[] bytes = serialize(obj);
+        writeContents(file, bytes);
+        Profile.record(Profile.WRITE_OBJECT, start, bytes.length);
     }
 
     /* DIRECTORIES */
@@ -288,9 +368,42 @@ class Utils {
         }
     }
 
+    /** The size of the buffer used to stream file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returns the SHA-1 hash of the contents of FILE, read in chunks of
+     *  BUFFER_SIZE bytes so that the whole file is never held in memory.
+     *  Throws IllegalArgumentException in case of problems. */
     static String fileSha1(File file) {
-        byte[] content = readContents(file);
-        return sha1(content);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        long start = Profile.start();
+        long bytes = 0;
+        MessageDigest md = newSha1();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                bytes += buffer.remaining();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = toHex(md.digest(), 0);
+        Profile.record(Profile.FILE_SHA1, start, bytes);
+        return id;
+    }
+
+    /** Returns a new SHA-1 MessageDigest. */
+    static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
     }
 
     static String fileSha1(File folder, String filename) {
@@ -0,0 +1,251 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/**
+ * The files of the working directory, including those in subdirectories.
+ * A file is named by its path from the working directory, with '/'
+ * between directories, e.g. "src/Main.java"; commits, stages and the
+ * stat cache all use these paths.
+ * The working directory is scanned by a fork-join task per directory, so
+ * directories are listed in parallel. .gitlet and the files matched by a
+ * pattern in .gitletignore are skipped:
+ * every line is a glob (*, ?, [abc], ** across directories), blank lines
+ * and lines starting with # are skipped.
+ * a pattern ending with / only matches directories.
+ * a pattern with another / is matched against the path from the working
+ * directory, any other pattern against the name of every file and directory.
+ *
+ * @author winter
+ */
+class WorkingTree {
+    /**
+     * The ignore file: CWD/.gitletignore
+     */
+    static final File IGNORE = join(Repository.CWD, ".gitletignore");
+
+    private static final Path ROOT = Repository.CWD.toPath();
+
+    /**
+     * all files below the working directory that are not ignored, sorted by path
+     */
+    static List<String> files() {
+        return files("");
+    }
+
+    /**
+     * all files below the directory DIR, a path from the working directory,
+     * that are not ignored, sorted by path
+     */
+    static List<String> files(String dir) {
+        Ignore ignore = new Ignore();
+        Path start = dir.equals("") ? ROOT : ROOT.resolve(dir);
+        List<String> files = ForkJoinPool.commonPool().invoke(new Scan(start,
+                dir.equals("") ? "" : dir + "/", ignore));
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * every file below the directory DIR, a path from the working directory,
+     * ignored or not
+     */
+    static List<String> allFiles(String dir) {
+        try (Stream<Path> paths = Files.walk(ROOT.resolve(dir))) {
+            return paths.filter(p -> !Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS))
+                    .map(p -> path(p.toFile()))
+                    .collect(Collectors.toList());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * the path of FILE, a file below the working directory
+     */
+    static String path(File file) {
+        String path = ROOT.relativize(file.toPath().toAbsolutePath()).toString();
+        return File.separatorChar == '/' ? path : path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * the path of the file NAME as given on the command line, e.g. "./src/../a.txt"
+     * is "a.txt". throws MESSAGE if the file would be outside the working directory
+     */
+    static String normalize(String name, String message) {
+        Path path = ROOT.relativize(ROOT.resolve(name).normalize());
+        if (path.startsWith("..") || path.toString().equals("")) {
+            throw error(message);
+        }
+        return path(ROOT.resolve(path).toFile());
+    }
+
+    /**
+     * delete the working file PATH, then every directory above it that is
+     * left empty. like Utils.restrictedDelete, refuses to delete anything
+     * outside a gitlet working directory
+     */
+    static boolean delete(String path) {
+        if (!Repository.GITLET_DIR.isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        File file = join(Repository.CWD, path);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        File dir = file.getParentFile();
+        while (!dir.equals(Repository.CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+
+    /**
+     * create the directories FILE is written to, and remove the empty
+     * directories left at the path of FILE, e.g. by deleting the files of a
+     * tracked directory that is now a file
+     */
+    static void makeParents(File file) {
+        if (file.isDirectory()) {
+            deleteEmptyDirs(file);
+        }
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IllegalArgumentException("cannot create " + dir);
+        }
+    }
+
+    private static void deleteEmptyDirs(File dir) {
+        File[] children = dir.listFiles(
+                child -> Files.isDirectory(child.toPath(), LinkOption.NOFOLLOW_LINKS));
+        if (children != null) {
+            for (File child : children) {
+                deleteEmptyDirs(child);
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * The patterns of .gitletignore.
+     */
+    private static final class Ignore {
+        private final List<PathMatcher> names = new ArrayList<>();
+        private final List<PathMatcher> paths = new ArrayList<>();
+        private final List<PathMatcher> dirNames = new ArrayList<>();
+        private final List<PathMatcher> dirPaths = new ArrayList<>();
+
+        Ignore() {
+            if (!IGNORE.isFile()) {
+                return;
+            }
+            for (String line : readContentsAsString(IGNORE).split("\r?\n")) {
+                String pattern = line.trim();
+                if (pattern.isEmpty() || pattern.startsWith("#")) {
+                    continue;
+                }
+                boolean dirOnly = pattern.endsWith("/");
+                if (dirOnly) {
+                    pattern = pattern.substring(0, pattern.length() - 1);
+                }
+                boolean anchored = pattern.contains("/");
+                if (pattern.startsWith("/")) {
+                    pattern = pattern.substring(1);
+                }
+                if (pattern.isEmpty()) {
+                    continue;
+                }
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+                if (dirOnly) {
+                    (anchored ? dirPaths : dirNames).add(matcher);
+                } else {
+                    (anchored ? paths : names).add(matcher);
+                }
+            }
+        }
+
+        /**
+         * whether the file or directory at PATH, named NAME, is ignored
+         */
+        boolean ignores(String path, Path name, boolean isDir) {
+            if (isDir && path.equals(".gitlet")) {
+                return true;
+            }
+            return matches(names, name) || matches(paths, Paths.get(path))
+                    || isDir && (matches(dirNames, name) || matches(dirPaths, Paths.get(path)));
+        }
+
+        private static boolean matches(List<PathMatcher> matchers, Path path) {
+            for (PathMatcher matcher : matchers) {
+                if (matcher.matches(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Lists the directory DIR, whose path is PREFIX, and forks a Scan for
+     * each of its subdirectories. symbolic links to directories are not followed.
+     */
+    private static final class Scan extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final String prefix;
+        private final Ignore ignore;
+
+        Scan(Path dir, String prefix, Ignore ignore) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.ignore = ignore;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> files = new ArrayList<>();
+            List<Scan> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    Path name = entry.getFileName();
+                    String path = prefix + name;
+                    boolean isDir = Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS);
+                    if (ignore.ignores(path, name, isDir)) {
+                        continue;
+                    }
+                    if (isDir) {
+                        Scan scan = new Scan(entry, path + "/", ignore);
+                        scan.fork();
+                        subdirs.add(scan);
+                    } else if (Files.isRegularFile(entry)) {
+                        files.add(path);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            for (Scan scan : subdirs) {
+                files.addAll(scan.join());
+            }
+            return files;
+        }
+    }
+}
@@ -1,11 +1,12 @@
 import sys, re
 from subprocess import \
-     check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
+     check_output, Popen, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, makedirs, mkdir, remove, access, W_OK
 from shutil import copyfile, rmtree
 from math import log
+from time import sleep
 
 SHORT_USAGE = """\
 Usage: python3 tester.py OPTIONS TEST.in ...
@@ -24,6 +25,10 @@ Usage: python3 tester.py OPTIONS TEST.in ...
        --tolerance=N  Set the maximum allowed edit distance between program
                       output and expected output to N (default 3).
        --verbose      Print extra information about execution.
+       --client       Run every command through gitlet.Client, which runs
+                      it itself since no daemon is running.
+       --daemon       Like --client, but start "gitlet serve" after each
+                      init, so every later command runs in the daemon.
 """
 
 USAGE = SHORT_USAGE + """\
@@ -93,6 +98,9 @@ GITLET_CLASS = "gitlet.Main"
 JVM_OPTIONS = "-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=5005"
 
 DEBUG = False
+DAEMON = False
+# the daemons started by the current test
+daemons = []
 DEBUG_MSG = \
     """You are in debug mode.
     In this mode, you will be shown each command from the test case.
@@ -152,6 +160,7 @@ def doDelete(name, dir):
 def doCopy(dest, src, dir):
     try:
         doDelete(dest, dir)
+        makedirs(dirname(join(dir, dest)), exist_ok=True)
         copyfile(join(src_dir, src), join(dir, dest))
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
@@ -177,6 +186,8 @@ def doExecute(cmnd, dir, timeout, line_num):
                 timeout, skip_first_line = None, True
 
         out = doCommand(full_cmnd, timeout, skip_first_line)
+        if DAEMON and cmnd.split()[:1] == ["init"]:
+            startDaemon(timeout)
         return "OK", out
     except CalledProcessError as excp:
         return ("java gitlet.Main exited with code {}".format(excp.args[0]),
@@ -186,6 +197,25 @@ def doExecute(cmnd, dir, timeout, line_num):
     finally:
         chdir(here)
 
+def startDaemon(timeout):
+    """Start "gitlet serve" in the current directory and wait until it
+    accepts commands."""
+    daemons.append(Popen("{} gitlet.Main serve".format(JAVA_COMMAND),
+                         shell=True, stdin=DEVNULL, stdout=DEVNULL,
+                         stderr=DEVNULL))
+    waited = 0
+    while not exists(join(".gitlet", "daemon.sock")):
+        if daemons[-1].poll() is not None or waited > timeout:
+            raise ValueError("gitlet serve did not start")
+        sleep(0.05)
+        waited += 0.05
+
+def stopDaemons():
+    for daemon in daemons:
+        daemon.terminate()
+        daemon.wait()
+    daemons.clear()
+
 def doCommand(full_cmnd, timeout, skip_first_line=False):
     out = check_output(full_cmnd, shell=True, universal_newlines=True,
                         stdin=DEVNULL, stderr=STDOUT, timeout=timeout)
@@ -385,6 +415,7 @@ def doTest(test):
             else:
                 raise ValueError("bad test line at {}".format(line_num))
     finally:
+        stopDaemons()
         if not keep:
             cleanTempDir(tmpdir)
 
@@ -400,7 +431,7 @@ if __name__ == "__main__":
         opts, files = \
             getopt(sys.argv[1:], '',
                    ['show=', 'keep', 'progdir=', 'verbose', 'src=',
-                    'tolerance=', 'debug'])
+                    'tolerance=', 'debug', 'client', 'daemon'])
         for opt, val in opts:
             if opt == '--show':
                 val = val.lower()
@@ -422,6 +453,11 @@ if __name__ == "__main__":
                 output_tolerance = int(val)
             elif opt == "--debug":
                 DEBUG = True
+            elif opt == "--client":
+                GITLET_CLASS = "gitlet.Client"
+            elif opt == "--daemon":
+                GITLET_CLASS = "gitlet.Client"
+                DAEMON = True
         if prog_dir is None:
             prog_dir = abspath(getcwd())
             k = 10